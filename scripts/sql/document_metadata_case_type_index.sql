@@ -0,0 +1,9 @@
+-- Supports the selection of documents to collect (see DocumentMetadataQueries), which joins the
+-- configured (case type, document type) allow-list on the case type expression and the type, and
+-- reads the documents updated since the last collection.
+--
+-- The indexed expression must match the query exactly: RIGHT(external_reference_uuid::text, 2).
+-- CONCURRENTLY avoids blocking writes to the table while the index is built.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS document_metadata_case_type_type_updated_on
+    ON metadata.document_metadata (RIGHT(external_reference_uuid::text, 2), type, updated_on);
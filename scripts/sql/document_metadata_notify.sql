@@ -0,0 +1,21 @@
+-- Notifies the extractor (in streaming mode, see streaming in the application.yml) when documents
+-- which may need collecting are inserted or updated (including being marked as deleted) in the DECS metadata database.
+--
+-- The notification only wakes the extractor up, it then collects with the usual batch query.
+-- Notifications with the same payload in one transaction are delivered once, so a bulk change
+-- sends one notification per transaction rather than one per row.
+
+CREATE OR REPLACE FUNCTION metadata.notify_document_metadata_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('document_metadata_changes', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS document_metadata_change ON metadata.document_metadata;
+
+CREATE TRIGGER document_metadata_change
+    AFTER INSERT OR UPDATE ON metadata.document_metadata
+    FOR EACH ROW
+    WHEN (NEW.status = 'UPLOADED' AND NEW.pdf_link IS NOT NULL)
+    EXECUTE FUNCTION metadata.notify_document_metadata_change();
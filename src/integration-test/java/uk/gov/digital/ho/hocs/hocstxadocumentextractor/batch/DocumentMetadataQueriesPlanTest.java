@@ -0,0 +1,128 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DocumentMetadataQueriesPlanTest {
+    /*
+    Checks the plans of the selection queries on the ci postgres database (see the README)
+    use the index created by scripts/sql/document_metadata_case_type_index.sql.
+     */
+    private static final String SCHEMA = "txa_plan_test";
+    private static final String INDEX = "document_metadata_case_type_type_updated_on";
+    private static final Map<String, List<String>> DOCUMENT_TYPES = DocumentMetadataQueries.parseDocumentTypes(
+        new String[] {"a1=ORIGINAL|CONTRIBUTION", "c7=Original complaint", "e1=To document|Email|CRF"});
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setServerNames(new String[] {"localhost"});
+        dataSource.setPortNumbers(new int[] {5432});
+        dataSource.setDatabaseName("postgres");
+        dataSource.setUser("root");
+        dataSource.setPassword("dev");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+
+        this.jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE;");
+        this.jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA + ";");
+        this.jdbcTemplate.execute("""
+            CREATE TABLE txa_plan_test.document_metadata  (
+                id bigint,
+                uuid uuid,
+                external_reference_uuid uuid,
+                type text,
+                display_name text,
+                file_link text,
+                pdf_link text,
+                status text,
+                created_on timestamp without time zone,
+                updated_on timestamp without time zone,
+                deleted boolean,
+                upload_owner uuid,
+                deleted_on timestamp without time zone
+            );
+            """);
+        String createIndex = Files.readString(Path.of("scripts/sql/document_metadata_case_type_index.sql"));
+        this.jdbcTemplate.execute(createIndex.replace("metadata.document_metadata", SCHEMA + ".document_metadata"));
+        this.jdbcTemplate.execute("""
+            INSERT INTO txa_plan_test.document_metadata (id, uuid, external_reference_uuid, type, pdf_link, status, updated_on, deleted, deleted_on)
+            SELECT
+                i,
+                md5(i::text)::uuid,
+                ('00000000-0000-4000-8000-0000' || lpad(to_hex(i), 6, '0') || (ARRAY['a1', 'c7', 'e1', 'f1'])[i % 4 + 1])::uuid,
+                (ARRAY['ORIGINAL', 'Original complaint', 'Email', 'DRAFT'])[i % 5 + 1],
+                'decs/' || i || '.pdf',
+                'UPLOADED',
+                '2023-01-01'::timestamp + i * interval '1 minute',
+                i % 7 = 0,
+                CASE WHEN i % 7 = 0 THEN '2023-01-01'::timestamp + i * interval '1 minute' END
+            FROM generate_series(1, 50000) AS i;
+            """);
+        this.jdbcTemplate.execute("ANALYZE " + SCHEMA + ".document_metadata;");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE;");
+    }
+
+    private String explain(String selection, String caseType) {
+        String query = DocumentMetadataQueries.resolve(selection + "ORDER BY updated_on ASC", SCHEMA, "document_metadata");
+        Object[] parameters = DocumentMetadataQueries.parameters("2023-01-30 00:00:00", null, DOCUMENT_TYPES, caseType);
+        // a single connection so the planner setting applies to the EXPLAIN, see below
+        return this.jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement();
+                 PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query)) {
+                /*
+                The test table is small enough that a sequential scan may be cheaper. Disabling it
+                checks the predicate can be answered from the index at all, which is what breaks
+                when the query and the indexed expression drift apart.
+                 */
+                statement.execute("SET enable_seqscan = off;");
+                new ArgumentPreparedStatementSetter(parameters).setValues(explain);
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1)).append("\n");
+                    }
+                }
+                statement.execute("RESET enable_seqscan;");
+                return plan.toString();
+            }
+        });
+    }
+
+    @Test
+    public void ingestQueryUsesIndexTest() {
+        String plan = explain(DocumentMetadataQueries.ingestSelection(), null);
+        assertTrue(plan.contains(INDEX), plan);
+    }
+
+    @Test
+    public void partitionIngestQueryUsesIndexTest() {
+        String plan = explain(DocumentMetadataQueries.ingestSelection(), "c7");
+        assertTrue(plan.contains(INDEX), plan);
+    }
+
+    @Test
+    public void deleteQueryUsesIndexTest() {
+        String plan = explain(DocumentMetadataQueries.deleteSelection(), null);
+        assertTrue(plan.contains(INDEX), plan);
+    }
+}
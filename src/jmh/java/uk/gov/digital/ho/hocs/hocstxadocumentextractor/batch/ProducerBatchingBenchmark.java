@@ -0,0 +1,101 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProducerBatchingBenchmark {
+    /*
+    Measures the cost of building the record batches the producer sends to the broker for a
+    chunk's worth of document events, for the old producer defaults (one uncompressed event per
+    batch, as linger.ms=0 sends them) against 64KB batches with each compression type.
+    The bytes on the wire of each setting are printed when its trial ends.
+
+    The producer builds batches with MemoryRecordsBuilder, so building them directly here
+    measures the same encoding and compression without a broker.
+     */
+    private static final int RECORD_COUNT = 500;
+    private static final int BATCH_BYTES = 65536;
+
+    @Param({"false", "true"})
+    private boolean batched;
+
+    @Param({"NONE", "LZ4", "ZSTD"})
+    private CompressionType compressionType;
+
+    private byte[][] keys;
+    private byte[][] values;
+    private int recordsPerBatch;
+    private long bytesOnWire;
+
+    @Setup
+    public void setup() {
+        DocumentSerializer serializer = new DocumentSerializer();
+        this.keys = new byte[RECORD_COUNT][];
+        this.values = new byte[RECORD_COUNT][];
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            DocumentRow doc = new DocumentRow();
+            doc.setUuid(UUID.randomUUID().toString());
+            doc.setExternalReferenceUuid(UUID.randomUUID().toString().substring(0, 34) + "a1");
+            doc.setCaseType("a1");
+            doc.setType("ORIGINAL");
+            doc.setPdfLink(UUID.randomUUID() + ".pdf");
+            doc.setStatus("UPLOADED");
+            doc.setUpdatedOn(new Timestamp(1679486400000L + i * 1000L));
+            doc.setSource("CS");
+            this.keys[i] = doc.getExternalReferenceUuid().getBytes(StandardCharsets.UTF_8);
+            this.values[i] = serializer.serialize("txa-decs-ingests", doc);
+        }
+        // assume compressed batches fill to half of batch.size
+        this.recordsPerBatch = this.batched ? BATCH_BYTES / (this.values[0].length * 2) : 1;
+        this.bytesOnWire = encode();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println("batched=" + this.batched + ", compression=" + this.compressionType + ": "
+            + this.bytesOnWire + " bytes on the wire for " + RECORD_COUNT + " events");
+    }
+
+    @Benchmark
+    public long encode() {
+        /*
+        Returns the total bytes of the record batches.
+         */
+        long totalBytes = 0;
+        int initialBufferSize = this.batched ? BATCH_BYTES : 1024;
+        for (int i = 0; i < RECORD_COUNT; i += this.recordsPerBatch) {
+            MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(initialBufferSize),
+                this.compressionType,
+                TimestampType.CREATE_TIME,
+                0L);
+            for (int j = i; j < Math.min(i + this.recordsPerBatch, RECORD_COUNT); j++) {
+                builder.append(1679486400000L, this.keys[j], this.values[j]);
+            }
+            totalBytes += builder.build().sizeInBytes();
+        }
+        return totalBytes;
+    }
+}
@@ -0,0 +1,50 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRowMapper;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class S3ItemProcessorBenchmark {
+    /*
+    Measures the per-document cost of serializing the metadata json sidecar.
+    The S3 requests themselves are not measured.
+     */
+    private S3ItemProcessor processor;
+    private DocumentRow document;
+
+    @Setup
+    public void setup() {
+        // no S3Client is needed as only the serialization is called
+        this.processor = new S3ItemProcessor(null, "source-bucket", "target-bucket", false, true, 0, 0, 1);
+
+        this.document = new DocumentRow();
+        this.document.setUuid("3fa85f64-5717-4562-b3fc-2c963f66afa6");
+        this.document.setExternalReferenceUuid("9b1deb4d-3b7d-4bad-9bdd-2b0d7b3dcb6d");
+        this.document.setCaseType("COMP");
+        this.document.setType("ORIGINAL");
+        this.document.setPdfLink("3fa85f64-5717-4562-b3fc-2c963f66afa6.pdf");
+        this.document.setStatus("UPLOADED");
+        this.document.setUpdatedOn(Timestamp.valueOf("2023-07-28 12:34:56.789"));
+        this.document.setSource("CS");
+        this.document.setDestinationKey(new DocumentRowMapper("CS").computeDestinationKey(
+            this.document.getUuid(), this.document.getExternalReferenceUuid(), this.document.getUpdatedOn()));
+    }
+
+    @Benchmark
+    public byte[] serializeMetadata() throws JsonProcessingException {
+        return this.processor.serializeMetadata(this.document);
+    }
+}
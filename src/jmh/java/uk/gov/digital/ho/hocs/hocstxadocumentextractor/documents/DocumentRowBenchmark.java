@@ -0,0 +1,158 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DocumentRowBenchmark {
+    /*
+    Measures the per-row cost of mapping a metadata row to a DocumentRow and of
+    serializing it for Kafka. Run with ./gradlew jmh (allocations are reported by -prof gc).
+
+    mapRow and mapLegacyRow compare the compact DocumentRow with the row as it was before
+    (Timestamp fields and a destinationKey computed by the mapper), see LegacyDocumentRow.
+    mapRowWithDestinationKey is the compact row when its key is used, as it is in ingest mode.
+    writePath and legacyWritePath add the checkpoint timestamp string the TxaKafkaItemWriter
+    builds for every document, so their gc.alloc.rate.norm compares the bytes allocated per
+    row by the reader, processor and writer before and after the row kept epoch micros.
+
+    serialize (DocumentJsonWriter) is compared with serializeWithObjectMapper, the reflective
+    ObjectMapper the documents were serialized with before, which writes the same bytes.
+     */
+    private final DocumentRowMapper mapper = new DocumentRowMapper("CS");
+    private final DocumentSerializer serializer = new DocumentSerializer();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleResultSet resultSet;
+    private DocumentRow document;
+
+    @Setup
+    public void setup() throws SQLException {
+        /*
+        An in-memory ResultSet positioned on a single row so only mapRow is measured,
+        not the JDBC driver.
+         */
+        Timestamp updatedOn = Timestamp.valueOf("2023-07-28 12:34:56.789");
+        this.resultSet = new SimpleResultSet();
+        this.resultSet.addColumn("uuid", Types.VARCHAR, 36, 0);
+        this.resultSet.addColumn("external_reference_uuid", Types.VARCHAR, 36, 0);
+        this.resultSet.addColumn("case_type", Types.VARCHAR, 16, 0);
+        this.resultSet.addColumn("type", Types.VARCHAR, 16, 0);
+        this.resultSet.addColumn("pdf_link", Types.VARCHAR, 128, 0);
+        this.resultSet.addColumn("status", Types.VARCHAR, 16, 0);
+        this.resultSet.addColumn("updated_on", Types.TIMESTAMP, 0, 0);
+        this.resultSet.addColumn("deleted_on", Types.TIMESTAMP, 0, 0);
+        this.resultSet.addRow("3fa85f64-5717-4562-b3fc-2c963f66afa6", "9b1deb4d-3b7d-4bad-9bdd-2b0d7b3dcb6d",
+            "COMP", "ORIGINAL", "3fa85f64-5717-4562-b3fc-2c963f66afa6.pdf", "UPLOADED", updatedOn, null);
+        this.resultSet.next();
+
+        this.document = this.mapper.mapRow(this.resultSet, 0);
+        // the key is computed once here rather than by the first serialization
+        this.document.getDestinationKey();
+    }
+
+    @Benchmark
+    public DocumentRow mapRow() throws SQLException {
+        return this.mapper.mapRow(this.resultSet, 0);
+    }
+
+    @Benchmark
+    public DocumentRow mapRowWithDestinationKey() throws SQLException {
+        DocumentRow row = this.mapper.mapRow(this.resultSet, 0);
+        row.getDestinationKey();
+        return row;
+    }
+
+    @Benchmark
+    public String writePath() throws SQLException {
+        DocumentRow row = this.mapper.mapRow(this.resultSet, 0);
+        row.getDestinationKey();
+        return DocumentRow.timestampString(row.getUpdatedOnMicros());
+    }
+
+    @Benchmark
+    public String legacyWritePath() throws SQLException {
+        LegacyDocumentRow row = mapLegacyRow();
+        return row.updatedOn.toString();
+    }
+
+    @Benchmark
+    public LegacyDocumentRow mapLegacyRow() throws SQLException {
+        LegacyDocumentRow row = new LegacyDocumentRow();
+        row.uuid = this.resultSet.getString("uuid");
+        row.externalReferenceUuid = this.resultSet.getString("external_reference_uuid");
+        row.caseType = this.resultSet.getString("case_type");
+        row.type = this.resultSet.getString("type");
+        row.pdfLink = this.resultSet.getString("pdf_link");
+        row.status = this.resultSet.getString("status");
+        row.updatedOn = this.resultSet.getTimestamp("updated_on");
+        row.deletedOn = this.resultSet.getTimestamp("deleted_on");
+        row.destinationKey = LegacyDocumentRow.destinationKey(this.mapper.hocsSystem, row.uuid,
+            row.externalReferenceUuid, row.updatedOn);
+        row.source = this.mapper.hocsSystem;
+        return row;
+    }
+
+    @Benchmark
+    public String computeDestinationKey() {
+        return this.mapper.computeDestinationKey(this.document.getUuid(),
+            this.document.getExternalReferenceUuid(), this.document.getUpdatedOn());
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return this.serializer.serialize("txa-documents", this.document);
+    }
+
+    @Benchmark
+    public byte[] serializeWithObjectMapper() throws JsonProcessingException {
+        return this.objectMapper.writeValueAsBytes(this.document);
+    }
+
+    public static class LegacyDocumentRow {
+        /*
+        The fields of the DocumentRow before it was made compact, and the destinationKey as the
+        mapper computed it then, as the baseline of mapLegacyRow.
+         */
+        private static final DateTimeFormatter yearFormatter = DateTimeFormatter.ofPattern("yyyy");
+        private static final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MM");
+        private static final DateTimeFormatter dayFormatter = DateTimeFormatter.ofPattern("dd");
+
+        public String uuid;
+        public String externalReferenceUuid;
+        public String caseType;
+        public String type;
+        public String pdfLink;
+        public String status;
+        public Timestamp updatedOn;
+        public Timestamp deletedOn;
+        public String destinationKey;
+        public String source;
+
+        static String destinationKey(String hocsSystem, String uuid, String extRefUuid, Timestamp updatedOn) {
+            LocalDateTime dateTime = updatedOn.toLocalDateTime();
+            StringJoiner joiner = new StringJoiner("/");
+            joiner.add("decs").add(hocsSystem).add("year=" + dateTime.format(yearFormatter))
+                .add("month=" + dateTime.format(monthFormatter)).add("day=" + dateTime.format(dayFormatter))
+                .add(extRefUuid).add(uuid + ".pdf");
+            return joiner.toString();
+        }
+    }
+}
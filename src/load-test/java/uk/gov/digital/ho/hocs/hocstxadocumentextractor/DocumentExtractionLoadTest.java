@@ -0,0 +1,168 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.test.context.ActiveProfiles;
+import software.amazon.awssdk.services.s3.S3Client;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch.ChunkTimingListener;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch.TxaKafkaItemWriter;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentSerializer;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.utils.DocumentMetadataGenerator;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.utils.InMemoryS3Client;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@SpringBatchTest
+@ActiveProfiles({"integration", "loadtest"})
+public class DocumentExtractionLoadTest {
+    /*
+    Load test of the whole documentExtractionJob
+
+    The real job (reader, processor, writers and listeners) runs against in-process stand-ins
+    rather than the docker-composed infrastructure of the integration tests:
+    - H2 in PostgreSQL mode for the DECS metadata database
+    - an InMemoryS3Client for both buckets
+    - a Kafka MockProducer behind the KafkaTemplate
+
+    so the throughput measured is that of the job's own code, not of the network. H2 is only an
+    approximation of Postgres, compare runs with each other rather than with production.
+
+    It reports documents/second, the p50/p99 chunk latency and the heap high-water mark for the
+    configured loadtest.rows, document-metadata.chunk_size and document-metadata.fetch_size.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DocumentExtractionLoadTest.class);
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+    private @Value("${loadtest.rows:1000000}") long rows;
+    private @Value("${document-metadata.chunk_size}") Integer chunkSize;
+    private @Value("${document-metadata.fetch_size}") Integer fetchSize;
+    private @Value("${s3.target_bucket}") String targetBucket;
+    private JdbcTemplate jdbcTemplate;
+
+    @TestConfiguration
+    static class InProcessInfrastructure {
+        /*
+        Replaces the beans which connect to external infrastructure, by name.
+         */
+        @Bean("metadataSource")
+        public DataSource metadataSource(@Value("${metadata-h2.jdbc-url}") String jdbcUrl) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(jdbcUrl);
+            return dataSource;
+        }
+
+        @Bean
+        public S3Client s3Client() {
+            return new InMemoryS3Client();
+        }
+
+        @Bean
+        public MockProducer<String, DocumentRow> mockProducer() {
+            return new MockProducer<>(true, new StringSerializer(), new DocumentSerializer()) {
+                // the KafkaTemplate closes producers it does not get from a DefaultKafkaProducerFactory
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public void close(Duration timeout) {
+                }
+            };
+        }
+
+        @Bean
+        public KafkaTemplate<String, DocumentRow> kafkaTemplate(MockProducer<String, DocumentRow> mockProducer,
+                                                                @Value("${kafka.ingest_topic}") String ingestTopic) {
+            ProducerFactory<String, DocumentRow> producerFactory = () -> mockProducer;
+            KafkaTemplate<String, DocumentRow> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+            kafkaTemplate.setDefaultTopic(ingestTopic);
+            return kafkaTemplate;
+        }
+
+        @Bean
+        public ChunkTimingListener checkpointCommitter(MockProducer<String, DocumentRow> mockProducer) {
+            return new ChunkTimingListener(mockProducer);
+        }
+    }
+
+    @Autowired
+    public void setDataSource(@Qualifier("metadataSource") DataSource metadataSource) {
+        this.jdbcTemplate = new JdbcTemplate(metadataSource);
+    }
+
+    @BeforeEach
+    void setUp(@Autowired S3Client s3Client) {
+        DocumentMetadataGenerator.createTable(this.jdbcTemplate);
+        String lastCollection = "{\"lastSuccessfulCollection\":\"2000-01-01 00:00:00\"}";
+        ((InMemoryS3Client) s3Client).putSeedObject(this.targetBucket, "decs/cs/ingests.json",
+            lastCollection.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testThroughput(@Autowired Job job,
+                               @Autowired TxaKafkaItemWriter writer,
+                               @Autowired S3Client s3Client,
+                               @Autowired ChunkTimingListener chunkTimings) throws Exception {
+        long expected = DocumentMetadataGenerator.generate(this.jdbcTemplate, this.rows);
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        this.jobLauncherTestUtils.setJob(job);
+        long start = System.nanoTime();
+        JobExecution jobExecution = this.jobLauncherTestUtils.launchJob();
+        long elapsedNanos = System.nanoTime() - start;
+        writer.commitTimestamp(); // required to trigger the predestroy method during the test
+
+        long heapHighWaterMark = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        List<Long> chunkNanos = chunkTimings.getChunkNanos();
+        Collections.sort(chunkNanos);
+        double seconds = elapsedNanos / 1e9;
+        InMemoryS3Client s3 = (InMemoryS3Client) s3Client;
+
+        log.info("Load test results:");
+        log.info("rows=" + this.rows + " chunk_size=" + this.chunkSize + " fetch_size=" + this.fetchSize);
+        log.info("documents collected=" + chunkTimings.getSentCount() + " in " + String.format("%.2f", seconds) + "s");
+        log.info(String.format("documents/second ~ %.2f", chunkTimings.getSentCount() / seconds));
+        log.info(String.format("chunks=%d p50=%.2fms p99=%.2fms", chunkNanos.size(),
+            ChunkTimingListener.percentile(chunkNanos, 50) / 1e6,
+            ChunkTimingListener.percentile(chunkNanos, 99) / 1e6));
+        log.info("heap high-water mark=" + heapHighWaterMark / (1024 * 1024) + "MB");
+        log.info("s3 copies=" + s3.getCopyCount() + " puts=" + s3.getPutCount());
+
+        assertEquals("COMPLETED", jobExecution.getExitStatus().getExitCode());
+        assertEquals(expected, chunkTimings.getSentCount());
+    }
+}
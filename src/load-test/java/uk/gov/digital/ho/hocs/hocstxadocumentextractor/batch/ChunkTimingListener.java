@@ -0,0 +1,57 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ChunkTimingListener extends CheckpointCommitter {
+    /*
+    Records how long each chunk takes (read, process and write) for the load test.
+
+    It stands in for the checkpointCommitter bean, which is already registered as a listener of
+    every chunk step, with periodic checkpoint commits disabled.
+
+    After each chunk it also counts and clears the records sent to the MockProducer, which
+    otherwise keeps every record sent for the whole run.
+     */
+    private final ThreadLocal<Long> chunkStart = new ThreadLocal<>();
+    private final List<Long> chunkNanos = Collections.synchronizedList(new ArrayList<>());
+    private final MockProducer<String, ?> producer;
+    private long sentCount = 0;
+
+    public ChunkTimingListener(MockProducer<String, ?> producer) {
+        super(null, 0, 0);
+        this.producer = producer;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        this.chunkStart.set(System.nanoTime());
+    }
+
+    @Override
+    public synchronized void afterChunk(ChunkContext context) {
+        this.chunkNanos.add(System.nanoTime() - this.chunkStart.get());
+        this.sentCount += this.producer.history().size();
+        this.producer.clear();
+    }
+
+    public synchronized long getSentCount() {
+        return this.sentCount + this.producer.history().size();
+    }
+
+    public List<Long> getChunkNanos() {
+        return new ArrayList<>(this.chunkNanos);
+    }
+
+    public static long percentile(List<Long> sortedValues, double percentile) {
+        if (sortedValues.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedValues.size()) - 1;
+        return sortedValues.get(Math.max(0, Math.min(index, sortedValues.size() - 1)));
+    }
+}
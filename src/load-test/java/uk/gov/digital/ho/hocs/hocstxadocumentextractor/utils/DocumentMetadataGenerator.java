@@ -0,0 +1,106 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class DocumentMetadataGenerator {
+    /*
+    Generates synthetic document_metadata rows for the load test.
+
+    Rows are spread over case types and document types so that most, but not all, of them
+    are selected by the ingest query - every 10th row has a document type the query filters
+    out and every 50th row is deleted. Each row is updated a second after the previous one.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DocumentMetadataGenerator.class);
+    private static final String[][] CASE_TYPES = {
+        {"a1", "ORIGINAL"},
+        {"a4", "Original Complaint"},
+        {"b5", "Original correspondence"},
+        {"c1", "Claim form"},
+        {"c5", "Email"},
+        {"d1", "Initial Correspondence"},
+        {"e1", "CRF"}
+    };
+    private static final int BATCH_SIZE = 10000;
+    public static final LocalDateTime FIRST_UPDATED_ON = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+    public static void createTable(JdbcTemplate jdbcTemplate) {
+        /*
+        The same table definition as the integration tests (see TestUtils.setUpPostgres).
+         */
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS metadata CASCADE;");
+        jdbcTemplate.execute("CREATE SCHEMA metadata;");
+        String createTable = """
+            CREATE TABLE metadata.document_metadata  (
+                id bigint,
+                uuid uuid,
+                external_reference_uuid uuid,
+                type text,
+                display_name text,
+                file_link text,
+                pdf_link text,
+                status text,
+                created_on timestamp without time zone,
+                updated_on timestamp without time zone,
+                deleted boolean,
+                upload_owner uuid,
+                deleted_on timestamp without time zone
+            );
+            """;
+        jdbcTemplate.execute(createTable);
+    }
+
+    public static long generate(JdbcTemplate jdbcTemplate, long rows) {
+        /*
+        Inserts the given number of rows and returns how many of them the ingest query should select.
+         */
+        log.info("Generating " + rows + " document_metadata rows");
+        String insert = """
+            INSERT INTO metadata.document_metadata (id, uuid, external_reference_uuid, type, pdf_link, status, updated_on, deleted, deleted_on)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        long expected = 0;
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (long i = 0; i < rows; i++) {
+            String[] caseType = CASE_TYPES[(int) (i % CASE_TYPES.length)];
+            boolean filteredType = i % 10 == 9;
+            boolean deleted = i % 50 == 49;
+            if (!filteredType && !deleted) {
+                expected++;
+            }
+
+            UUID uuid = new UUID(0x00000000aaaa4bbbL, 0xc000000000000000L | i);
+            // the case type is the last 2 characters of the external_reference_uuid
+            UUID externalReferenceUuid = UUID.fromString(String.format("%08x-aaaa-4bbb-cccc-%010x%s", i, i, caseType[0]));
+            Timestamp updatedOn = Timestamp.valueOf(FIRST_UPDATED_ON.plusSeconds(i));
+            batch.add(new Object[] {
+                i,
+                uuid,
+                externalReferenceUuid,
+                filteredType ? "DRAFT" : caseType[1],
+                "decs-file" + i + ".pdf",
+                "UPLOADED",
+                updatedOn,
+                deleted,
+                deleted ? updatedOn : null
+            });
+
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(insert, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(insert, batch);
+        }
+        log.info("Generated " + rows + " rows of which " + expected + " should be collected");
+        return expected;
+    }
+}
@@ -0,0 +1,114 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.utils;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CopyObjectResult;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InMemoryS3Client implements S3Client {
+    /*
+    An in-process stand-in for the S3Client which implements only the requests the job makes.
+
+    Objects given to putSeedObject (e.g. the ingests.json timestamp record) are kept and can be
+    read back. Copies and puts of other objects are only counted, so that holding millions of
+    documents in memory does not hide the heap used by the job itself.
+     */
+    private static final SdkHttpResponse OK = SdkHttpResponse.builder().statusCode(200).build();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final AtomicLong copyCount = new AtomicLong();
+    private final AtomicLong putCount = new AtomicLong();
+
+    public void putSeedObject(String bucket, String key, byte[] content) {
+        this.objects.put(bucket + "/" + key, content);
+    }
+
+    public byte[] getSeedObject(String bucket, String key) {
+        return this.objects.get(bucket + "/" + key);
+    }
+
+    public long getCopyCount() {
+        return this.copyCount.get();
+    }
+
+    public long getPutCount() {
+        return this.putCount.get();
+    }
+
+    @Override
+    public CopyObjectResponse copyObject(CopyObjectRequest copyObjectRequest) {
+        this.copyCount.incrementAndGet();
+        return CopyObjectResponse.builder()
+            .copyObjectResult(CopyObjectResult.builder().eTag("\"etag\"").build())
+            .build();
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest putObjectRequest, RequestBody requestBody) {
+        this.putCount.incrementAndGet();
+        String objectKey = putObjectRequest.bucket() + "/" + putObjectRequest.key();
+        if (this.objects.containsKey(objectKey)) {
+            try (InputStream content = requestBody.contentStreamProvider().newStream()) {
+                this.objects.put(objectKey, content.readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        PutObjectResponse.Builder response = PutObjectResponse.builder().eTag("\"etag\"");
+        response.sdkHttpResponse(OK);
+        return response.build();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest getObjectRequest) {
+        byte[] content = this.objects.get(getObjectRequest.bucket() + "/" + getObjectRequest.key());
+        if (content == null) {
+            throw NoSuchKeyException.builder().message("The specified key does not exist.").build();
+        }
+        GetObjectResponse response = GetObjectResponse.builder().contentLength((long) content.length).build();
+        return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(content)));
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest headObjectRequest) {
+        byte[] content = this.objects.get(headObjectRequest.bucket() + "/" + headObjectRequest.key());
+        if (content == null) {
+            throw NoSuchKeyException.builder().message("The specified key does not exist.").build();
+        }
+        return HeadObjectResponse.builder().contentLength((long) content.length).eTag("\"etag\"").build();
+    }
+
+    @Override
+    public HeadBucketResponse headBucket(HeadBucketRequest headBucketRequest) {
+        return HeadBucketResponse.builder().build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
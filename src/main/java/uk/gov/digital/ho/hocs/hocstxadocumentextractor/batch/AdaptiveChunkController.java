@@ -0,0 +1,108 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+
+public class AdaptiveChunkController extends SimpleCompletionPolicy implements ChunkListener {
+    /*
+    Adaptive mode: rather than a fixed chunk_size, the number of documents in each chunk is
+    adjusted after every chunk, between minChunkSize and maxChunkSize, so that a chunk takes
+    about targetChunkMillis. The chunk time is dominated by the S3 copies and the Kafka flush,
+    so chunks grow while those are fast and shrink when they slow down. The size changes by at
+    most a factor of 2 per chunk so a single slow or fast chunk does not swing it.
+
+    When S3 requests or Kafka sends failed during a chunk (or the chunk failed) the size is halved,
+    so fewer documents are in flight while the errors persist.
+
+    The cursor reader fetches one chunk's worth of rows at a time, see PostgresItemReader.doRead.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveChunkController.class);
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long targetChunkMillis;
+    private final ThreadLocal<long[]> chunkStart = new ThreadLocal<>();
+    // read on every item by every partition's thread, so kept here rather than behind a lock
+    private volatile int chunkSize;
+
+    AdaptiveChunkController(int initialChunkSize, int minChunkSize, int maxChunkSize, long targetChunkMillis) {
+        super(Math.max(minChunkSize, Math.min(maxChunkSize, initialChunkSize)));
+        log.info("Constructing AdaptiveChunkController with chunk sizes between " + minChunkSize + " and "
+            + maxChunkSize + ", aiming at " + targetChunkMillis + "ms per chunk");
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.targetChunkMillis = targetChunkMillis;
+        this.chunkSize = super.getChunkSize();
+        PipelineMetrics.setChunkSize(getChunkSize());
+    }
+
+    @Override
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        super.setChunkSize(chunkSize);
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        return context.getStartedCount() >= this.chunkSize;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        /*
+        Kept per thread as the partitions' worker steps share this listener in partitioned mode.
+         */
+        this.chunkStart.set(new long[] {
+            System.currentTimeMillis(),
+            context.getStepContext().getStepExecution().getReadCount(),
+            (long) PipelineMetrics.errorCount()});
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        long[] start = this.chunkStart.get();
+        if (start == null) {
+            return;
+        }
+        this.chunkStart.remove();
+        long items = context.getStepContext().getStepExecution().getReadCount() - start[1];
+        long millis = System.currentTimeMillis() - start[0];
+        boolean errors = (long) PipelineMetrics.errorCount() > start[2];
+        adjust(items, millis, errors);
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        this.chunkStart.remove();
+        adjust(0, 0, true);
+    }
+
+    protected synchronized void adjust(long items, long millis, boolean errors) {
+        int current = getChunkSize();
+        int next;
+        if (errors) {
+            next = current / 2;
+        } else if (items == 0) {
+            return;  // the last (empty) chunk of the step
+        } else {
+            // the number of documents which would have taken the target time at this chunk's rate
+            long fitting = items * this.targetChunkMillis / Math.max(millis, 1);
+            next = (int) Math.max(current / 2, Math.min(2L * current, fitting));
+        }
+        next = Math.max(this.minChunkSize, Math.min(this.maxChunkSize, next));
+        if (next != current) {
+            log.info("Adjusting chunk size from " + current + " to " + next + " after " + items + " documents in "
+                + millis + "ms" + (errors ? " with errors" : ""));
+            setChunkSize(next);
+            PipelineMetrics.setChunkSize(next);
+        }
+    }
+}
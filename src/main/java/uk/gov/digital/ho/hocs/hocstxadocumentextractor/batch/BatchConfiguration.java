@@ -1,62 +1,136 @@
 package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersIncrementer;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
+import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.listener.ExecutionContextPromotionListener;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.batch.item.support.CompositeItemWriter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.transaction.PlatformTransactionManager;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
 import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
 
 import javax.sql.DataSource;
-import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
 public class BatchConfiguration {
     /*
     Main configuration for the Spring Batch job.
+
+    The beans collecting the single mode.hocs_system (its reader, writer, checkpoint committer and steps)
+    are only built without mode.hocs_systems, multi-system mode builds each system's own instead.
      */
+    private static final String SINGLE_SYSTEM = "'${mode.hocs_systems}' == ''";
 
     private @Value("${document-metadata.metadata_schema}") String metadataSchema;
     private @Value("${document-metadata.metadata_table}") String metadataTable;
     private @Value("${document-metadata.fetch_size}") Integer fetchSize;
     private @Value("${document-metadata.chunk_size}") Integer chunkSize;
+    private @Value("${document-metadata.reader}") String readerType;
+    private @Value("${document-metadata.page_size}") Integer pageSize;
     private @Value("${document-metadata.last_collection}") String lastCollection;
+    private @Value("${document-metadata.case_type_document_types}") String[] caseTypeDocumentTypes;
+    private @Value("${document-metadata.pool_size}") Integer poolSize;
     private @Value("${s3.source_bucket}") String sourceBucket;
     private @Value("${s3.target_bucket}") String targetBucket;
-    private @Value("${s3.endpoint_url}") String endpointURL;
+    private @Value("${s3.async.max_in_flight}") Integer maxInFlight;
+    private @Value("${s3.skip_existing}") boolean skipExisting;
+    private @Value("${s3.metadata.mode}") String metadataMode;
+    private @Value("${s3.metadata.manifest_grouping}") String manifestGrouping;
+    private @Value("${s3.metadata.manifest_gzip}") boolean manifestGzip;
+    private @Value("${s3.multipart.threshold_mb}") Long multipartThresholdMb;
+    private @Value("${s3.multipart.part_size_mb}") Long partSizeMb;
+    private @Value("${s3.multipart.part_concurrency}") Integer partConcurrency;
+    private @Value("${kafka.max_pending_chunks}") Integer maxPendingChunks;
+    private @Value("${kafka.delete_ledger}") boolean deleteLedger;
+    private @Value("${kafka.delete_topic}") String deleteTopic;
     private @Value("${slack.decs_channel}") String decsSlackURL;
     private @Value("${slack.txa_channel}") String txaSlackURL;
     private @Value("${mode.delete}") boolean deletes;
+    private @Value("${mode.combined}") boolean combined;
     private @Value("${mode.hocs_system}") String hocsSystem;
+    private @Value("${mode.hocs_systems}") String[] hocsSystems;
+    private @Value("${checkpoint.commit_interval_chunks}") Integer checkpointIntervalChunks;
+    private @Value("${checkpoint.commit_interval_seconds}") Integer checkpointIntervalSeconds;
+    private @Value("${job_repository.restart}") boolean restart;
+    private @Value("${job_repository.start_limit}") Integer startLimit;
+    private @Value("${daemon.cron}") String daemonCron;
+    private @Value("${daemon.interval_seconds}") Integer daemonIntervalSeconds;
+    private @Value("${streaming.channel}") String streamingChannel;
+    private @Value("${streaming.debounce_ms}") Long streamingDebounceMs;
+    private @Value("${adaptive.enabled}") boolean adaptive;
+    private @Value("${adaptive.min_chunk_size}") Integer adaptiveMinChunkSize;
+    private @Value("${adaptive.max_chunk_size}") Integer adaptiveMaxChunkSize;
+    private @Value("${adaptive.target_chunk_millis}") Long adaptiveTargetChunkMillis;
+    private @Value("${partitioning.enabled}") boolean partitioned;
+    private @Value("${partitioning.grid_size}") Integer gridSize;
+    private @Value("${backfill.enabled}") boolean backfill;
+    private @Value("${backfill.from}") String backfillFrom;
+    private @Value("${backfill.to}") String backfillTo;
+    private @Value("${backfill.slice_hours}") Integer backfillSliceHours;
 
     @Bean
     public SlackNotification slackNotification() {
         /*
         For crafting and sending slack notifications about job success / failure.
          */
+        return new SlackNotification(slackURLMap(), deletes, hocsSystem);
+    }
+
+    private Map<String, String> slackURLMap() {
         Map<String, String> slackURLMap = new HashMap<String, String>();
         slackURLMap.put("txa", txaSlackURL);
         slackURLMap.put("decs", decsSlackURL);
-        return new SlackNotification(slackURLMap, deletes, hocsSystem);
+        return slackURLMap;
     }
 
     @Bean
-    public JobStartFinishListener jobListener(SlackNotification slackNotification) throws URISyntaxException {
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public JobStartFinishListener jobListener(S3Client s3Client, SlackNotification slackNotification) {
         /*
         For executing tasks before and after job execution.
          */
-        return new JobStartFinishListener(targetBucket,
-            endpointURL,
+        return new JobStartFinishListener(s3Client,
+            targetBucket,
             lastCollection,
             deletes,
             hocsSystem,
@@ -70,92 +144,592 @@ public class BatchConfiguration {
         Makes information recorded at the step level available to other elements of the Job.
          */
         ExecutionContextPromotionListener listener = new ExecutionContextPromotionListener();
-        listener.setKeys(new String[] {"lastSuccessfulCollection", "readCount"});
+        listener.setKeys(new String[] {"lastSuccessfulCollection", "readCount", "skippedCopyCount"});
         listener.setStatuses(new String[] {"*"});  // promote keys regardless of step outcome.
         return listener;
     }
 
     @Bean
-    public PostgresItemReader reader(@Qualifier("metadataSource") DataSource metadataSource) {
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public AbstractItemCountingItemStreamItemReader<DocumentRow> reader(@Qualifier("metadataSource") DataSource metadataSource,
+                                                                        ObjectProvider<AdaptiveChunkController> chunkController) {
         /*
         For reading rows from the DECS metadata database.
          */
-        return new PostgresItemReader(metadataSource,
+        return createReader(metadataSource, chunkController.getIfAvailable(), deletes, metadataSchema, metadataTable, hocsSystem);
+    }
+
+    @Bean
+    @StepScope
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public AbstractItemCountingItemStreamItemReader<DocumentRow> partitionReader(@Qualifier("metadataSource") DataSource metadataSource,
+                                                                                 ObjectProvider<AdaptiveChunkController> chunkController,
+                                                                                 @Value("#{stepExecution}") StepExecution stepExecution) throws Exception {
+        /*
+        For reading rows from the DECS metadata database in partitioned mode.
+        Each partition (worker step) gets its own reader restricted to the partition's case type.
+
+        The @BeforeStep method of a step scoped reader is not detected through its proxy so
+        the SQL parameters are set here from the partition's step execution instead.
+         */
+        AbstractItemCountingItemStreamItemReader<DocumentRow> reader = createReader(metadataSource, chunkController.getIfAvailable(), deletes, metadataSchema, metadataTable, hocsSystem);
+        if (reader instanceof PostgresPagingItemReader pagingReader) {
+            pagingReader.setSqlParams(stepExecution);
+        } else {
+            ((PostgresItemReader) reader).setSqlParams(stepExecution);
+        }
+        return reader;
+    }
+
+    protected AbstractItemCountingItemStreamItemReader<DocumentRow> createReader(DataSource metadataSource,
+                                                                                AdaptiveChunkController chunkController,
+                                                                                boolean deletes,
+                                                                                String metadataSchema,
+                                                                                String metadataTable,
+                                                                                String hocsSystem) {
+        /*
+        Either reads through a single long-lived cursor or in keyset paged queries with short transactions.
+        The keyset reader's page size stays fixed in adaptive mode, its paging queries are generated once.
+         */
+        if (readerType.equalsIgnoreCase("keyset")) {
+            return new PostgresPagingItemReader(metadataSource,
+                metadataSchema,
+                metadataTable,
+                pageSize,
+                deletes,
+                hocsSystem,
+                DocumentMetadataQueries.parseDocumentTypes(caseTypeDocumentTypes));
+        }
+        PostgresItemReader reader = new PostgresItemReader(metadataSource,
             metadataSchema,
             metadataTable,
             fetchSize,
             deletes,
-            hocsSystem);
+            hocsSystem,
+            DocumentMetadataQueries.parseDocumentTypes(caseTypeDocumentTypes));
+        reader.setChunkController(chunkController);
+        return reader;
     }
 
     @Bean
-    public S3ItemProcessor processor() throws URISyntaxException {
+    public S3ItemProcessor processor(S3Client s3Client) {
         /*
         For copying objects between S3 buckets
          */
-        return new S3ItemProcessor(sourceBucket, targetBucket, endpointURL);
+        return new S3ItemProcessor(s3Client,
+            sourceBucket,
+            targetBucket,
+            skipExisting,
+            writeSidecars(),
+            multipartThresholdMb * 1024 * 1024,
+            partSizeMb * 1024 * 1024,
+            partConcurrency);
     }
 
     @Bean
-    public TxaKafkaItemWriter writer(KafkaTemplate kafkaTemplate) throws Exception {
+    @ConditionalOnProperty(name = "s3.async.enabled", havingValue = "true")
+    public S3AsyncItemWriter s3AsyncWriter(S3AsyncClient s3AsyncClient) {
+        /*
+        For copying all objects in a chunk between S3 buckets concurrently, in place of the processor.
+
+        The async writer neither skips documents already on the target bucket nor copies large
+        documents in parts, so those options are refused rather than silently ignored.
+         */
+        if (skipExisting || multipartThresholdMb > 0) {
+            throw new IllegalStateException("The async copy mode cannot be enabled together with skip_existing or multipart copies");
+        }
+        return new S3AsyncItemWriter(s3AsyncClient, sourceBucket, targetBucket, maxInFlight, writeSidecars());
+    }
+
+    @Bean
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public S3ManifestItemWriter manifestWriter(S3Client s3Client) {
+        /*
+        For writing the metadata of each chunk's documents as manifests, in manifest mode
+         */
+        return new S3ManifestItemWriter(s3Client, targetBucket, hocsSystem, manifestGrouping.equalsIgnoreCase("day"), manifestGzip);
+    }
+
+    private boolean writeSidecars() {
+        return !metadataMode().equals("manifest");
+    }
+
+    private boolean writeManifests() {
+        return !metadataMode().equals("sidecar");
+    }
+
+    private String metadataMode() {
+        /*
+        An unknown mode (e.g. a typo) is refused rather than falling back to sidecars.
+        The processor is built at start-up so the application fails to start.
+         */
+        String mode = metadataMode.toLowerCase();
+        if (!List.of("sidecar", "manifest", "both").contains(mode)) {
+            throw new IllegalStateException("Unknown s3.metadata.mode " + metadataMode + ", expected sidecar, manifest or both");
+        }
+        return mode;
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public TxaKafkaItemWriter writer(S3Client s3Client, KafkaTemplate kafkaTemplate) throws Exception {
         /*
         For publishing documents to Kafka
          */
-        Map<String, String> slackURLMap = new HashMap<String, String>();
-        slackURLMap.put("txa", txaSlackURL);
-        slackURLMap.put("decs", decsSlackURL);
-        return new TxaKafkaItemWriter(targetBucket, endpointURL, slackURLMap, deletes, hocsSystem, kafkaTemplate);
+        return createWriter(s3Client, kafkaTemplate, deletes, hocsSystem);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${mode.combined} and " + SINGLE_SYSTEM)
+    public TxaKafkaItemWriter deleteWriter(S3Client s3Client, ProducerFactory<String, DocumentRow> producerFactory) throws Exception {
+        /*
+        For publishing documents to the delete topic in combined mode, through the same producer as the writer.
+        It is a bean of its own so that its timestamp is committed when the application shuts down.
+         */
+        return createWriter(s3Client, deleteKafkaTemplate(producerFactory), true, hocsSystem);
+    }
+
+    private KafkaTemplate<String, DocumentRow> deleteKafkaTemplate(ProducerFactory<String, DocumentRow> producerFactory) {
+        KafkaTemplate<String, DocumentRow> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        kafkaTemplate.setDefaultTopic(deleteTopic);
+        return kafkaTemplate;
+    }
+
+    private TxaKafkaItemWriter createWriter(S3Client s3Client, KafkaTemplate kafkaTemplate, boolean deletes, String hocsSystem) throws Exception {
+        TxaKafkaItemWriter writer = new TxaKafkaItemWriter(s3Client, targetBucket, slackURLMap(), deletes, hocsSystem, kafkaTemplate, maxPendingChunks);
+        if (deletes && deleteLedger) {
+            writer.setLedger(new PublishedDeletesLedger(s3Client, targetBucket, hocsSystem));
+        }
+        return writer;
+    }
+
+    @Bean
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public CheckpointCommitter checkpointCommitter(S3Client s3Client) {
+        /*
+        For committing the checkpoint to the target S3 periodically while the step runs
+         */
+        S3TimestampManager timestampManager = new S3TimestampManager(s3Client, targetBucket, "", deletes, hocsSystem);
+        return new CheckpointCommitter(timestampManager, checkpointIntervalChunks, checkpointIntervalSeconds);
     }
 
     @Bean
+    @ConditionalOnProperty(name = "adaptive.enabled", havingValue = "true")
+    public AdaptiveChunkController chunkController() {
+        /*
+        For adjusting the chunk size (and the cursor reader's fetch size) while the step runs in adaptive mode.
+         */
+        return new AdaptiveChunkController(chunkSize, adaptiveMinChunkSize, adaptiveMaxChunkSize, adaptiveTargetChunkMillis);
+    }
+
+    @Bean
+    public CaseTypePartitioner partitioner() {
+        /*
+        For splitting the collection into one partition per case type in partitioned mode.
+
+        The partitions are the case types of the allow-list, as the job watermark moves past
+        every case type - one without a partition would never be collected.
+         */
+        return new CaseTypePartitioner(new ArrayList<>(
+            DocumentMetadataQueries.parseDocumentTypes(caseTypeDocumentTypes).keySet()));
+    }
+
+    @Bean
+    public TimeSlicePartitioner backfillPartitioner() {
+        /*
+        For splitting the backfill range into time slices in backfill mode.
+         */
+        return new TimeSlicePartitioner(backfillFrom, backfillTo, Duration.ofHours(backfillSliceHours));
+    }
+
+    @Bean
+    @ConditionalOnExpression(SINGLE_SYSTEM)
+    public Step workerStep(JobRepository jobRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Qualifier("partitionReader") AbstractItemCountingItemStreamItemReader<DocumentRow> partitionReader,
+                           S3ItemProcessor processor,
+                           TxaKafkaItemWriter writer,
+                           ObjectProvider<S3AsyncItemWriter> s3AsyncWriter,
+                           S3ManifestItemWriter manifestWriter,
+                           CheckpointCommitter checkpointCommitter,
+                           ObjectProvider<AdaptiveChunkController> chunkController) {
+        /*
+        The Step executed for each partition in partitioned mode.
+        Only the reader differs between partitions, the processor and writer are shared.
+         */
+        return chunkStepBuilder("workerStep", jobRepository, transactionManager, partitionReader, processor, writer,
+                s3AsyncWriter.getIfAvailable(), manifestWriter, checkpointCommitter, chunkController.getIfAvailable(), deletes, hocsSystem)
+            .build();
+    }
+
+    @Bean
+    @ConditionalOnExpression(SINGLE_SYSTEM)
     public Step mainStep(JobRepository jobRepository,
                          PlatformTransactionManager transactionManager,
-                         PostgresItemReader reader,
+                         @Qualifier("reader") AbstractItemCountingItemStreamItemReader<DocumentRow> reader,
                          S3ItemProcessor processor,
                          TxaKafkaItemWriter writer,
+                         ObjectProvider<S3AsyncItemWriter> s3AsyncWriter,
+                         S3ManifestItemWriter manifestWriter,
+                         CheckpointCommitter checkpointCommitter,
+                         ObjectProvider<AdaptiveChunkController> chunkController,
+                         CaseTypePartitioner partitioner,
+                         TimeSlicePartitioner backfillPartitioner,
+                         @Qualifier("workerStep") Step workerStep,
                          ReadCountStepExecutionListener listener,
+                         S3ConnectionWarmUpListener warmUpListener,
                          ExecutionContextPromotionListener promotionListener) {
         /*
         Defines a Spring Batch Step by combining an ItemReader, ItemProcessor and ItemWriter.
+
+        In partitioned mode this is instead a manager Step which runs the workerStep once per
+        case type, up to gridSize partitions at a time. In backfill mode it runs the workerStep
+        once per time slice of the backfill range instead.
          */
-        if (deletes) {
-            /*
-            An identical step definition to ingest (not delete) mode except that
-            the processor (which copies documents between S3 buckets) is omitted.
-             */
+        if (partitioned && backfill) {
+            throw new IllegalStateException("Partitioning by case type and backfill mode cannot be enabled together");
+        }
+        if (partitioned || backfill) {
+            Partitioner stepPartitioner = backfill ? backfillPartitioner : partitioner;
+            SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("partition-");
+            taskExecutor.setConcurrencyLimit(gridSize);
             return new StepBuilder("mainStep", jobRepository)
-                .startLimit(1)
-                .<DocumentRow, DocumentRow> chunk(chunkSize, transactionManager)
-                .reader(reader)
-                .writer(writer)
+                .startLimit(stepStartLimit())
+                .partitioner("workerStep", stepPartitioner)
+                .step(workerStep)
+                .gridSize(gridSize)
+                .taskExecutor(taskExecutor)
+                .listener(stepPartitioner)
+                .listener((StepExecutionListener) checkpointCommitter)  // reset once per run, not per partition
                 .listener(promotionListener)  // Must be declared first so its afterStep runs after the ReadCountStepExecutionListener
                 .listener(listener)
+                .listener(warmUpListener)
                 .build();
         }
-        return new StepBuilder("mainStep", jobRepository)
-                .startLimit(1)
-                .<DocumentRow, DocumentRow> chunk(chunkSize, transactionManager)
-                .reader(reader)
-                .processor(processor)
-                .writer(writer)
-                .listener(promotionListener)  // Must be declared first so its afterStep runs after the ReadCountStepExecutionListener
-                .listener(listener)
-                .build();
+        return chunkStepBuilder("mainStep", jobRepository, transactionManager, reader, processor, writer,
+                s3AsyncWriter.getIfAvailable(), manifestWriter, checkpointCommitter, chunkController.getIfAvailable(), deletes, hocsSystem)
+            .listener((StepExecutionListener) checkpointCommitter)
+            .listener(promotionListener)  // Must be declared first so its afterStep runs after the ReadCountStepExecutionListener
+            .listener(listener)
+            .listener(warmUpListener)
+            .build();
+    }
+
+    private SimpleStepBuilder<DocumentRow, DocumentRow> chunkStepBuilder(String stepName,
+                                                                          JobRepository jobRepository,
+                                                                          PlatformTransactionManager transactionManager,
+                                                                          ItemReader<DocumentRow> reader,
+                                                                          S3ItemProcessor processor,
+                                                                          TxaKafkaItemWriter writer,
+                                                                          S3AsyncItemWriter s3AsyncWriter,
+                                                                          S3ManifestItemWriter manifestWriter,
+                                                                          CheckpointCommitter checkpointCommitter,
+                                                                          AdaptiveChunkController chunkController,
+                                                                          boolean deletes,
+                                                                          String hocsSystem) {
+        StepBuilder stepBuilder = new StepBuilder(stepName, jobRepository);
+        SimpleStepBuilder<DocumentRow, DocumentRow> builder = chunkController != null
+            ? stepBuilder.<DocumentRow, DocumentRow> chunk(chunkController, transactionManager)
+            : stepBuilder.<DocumentRow, DocumentRow> chunk(chunkSize, transactionManager);
+        builder.startLimit(stepStartLimit());
+        builder.reader(reader);
+        builder.listener((ChunkListener) checkpointCommitter);
+        if (deletes) {
+            checkpointCommitter.setLedger(writer.getLedger());
+        }
+        if (chunkController != null) {
+            builder.listener(chunkController);
+        }
+        builder.listener(new PipelineMetricsListener(hocsSystem, deletes));
+        if (deletes) {
+            /*
+            The processor (which copies documents between S3 buckets) is omitted in delete mode,
+            otherwise the step definitions are identical.
+             */
+            builder.writer(writer);
+            return builder;
+        }
+        /*
+        In async mode the whole chunk is copied by the S3AsyncItemWriter (instead of the processor)
+        and in manifest mode the chunk's manifests are written, both before it is published to Kafka.
+        The composite hides the Kafka writer's step listener methods so it is registered as a
+        listener explicitly.
+         */
+        List<ItemWriter<? super DocumentRow>> delegates = new ArrayList<>();
+        if (s3AsyncWriter != null) {
+            delegates.add(s3AsyncWriter);
+        } else {
+            builder.processor(processor);
+        }
+        if (writeManifests()) {
+            delegates.add(manifestWriter);
+        }
+        if (delegates.isEmpty()) {
+            builder.writer(writer);
+        } else {
+            delegates.add(writer);
+            CompositeItemWriter<DocumentRow> compositeWriter = new CompositeItemWriter<>();
+            compositeWriter.setDelegates(delegates);
+            builder.writer(compositeWriter).listener(writer);
+        }
+        return builder;
+    }
+
+    @Bean
+    @ConditionalOnExpression("${mode.combined} and " + SINGLE_SYSTEM)
+    public Step deleteStep(JobRepository jobRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Qualifier("metadataSource") DataSource metadataSource,
+                           S3Client s3Client,
+                           @Qualifier("deleteWriter") TxaKafkaItemWriter deleteWriter,
+                           ObjectProvider<AdaptiveChunkController> chunkController,
+                           ReadCountStepExecutionListener listener,
+                           ExecutionContextPromotionListener promotionListener) {
+        /*
+        The Step collecting documents for deletion in combined mode, alongside the mainStep collecting
+        documents for ingestion. It is never partitioned, deletes are few and need no S3 copies.
+        Its reader, writer and checkpoints are its own as the deletes have their own timestamp.
+         */
+        AbstractItemCountingItemStreamItemReader<DocumentRow> reader = createReader(metadataSource, chunkController.getIfAvailable(), true, metadataSchema, metadataTable, hocsSystem);
+        S3TimestampManager timestampManager = new S3TimestampManager(s3Client, targetBucket, "", true, hocsSystem);
+        CheckpointCommitter checkpointCommitter = new CheckpointCommitter(timestampManager, checkpointIntervalChunks, checkpointIntervalSeconds);
+        return chunkStepBuilder("deleteStep", jobRepository, transactionManager, reader, null, deleteWriter,
+                null, null, checkpointCommitter, chunkController.getIfAvailable(), true, hocsSystem)
+            .listener((StepExecutionListener) checkpointCommitter)
+            .listener(promotionListener)  // Must be declared first so its afterStep runs after the ReadCountStepExecutionListener
+            .listener(listener)
+            .build();
+    }
+
+    private int stepStartLimit() {
+        /*
+        A step may only be started again when restarting a failed job instance.
+         */
+        return restart ? startLimit : 1;
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${mode.hocs_systems}' != ''")
+    public SystemCollections systemCollections(Environment environment,
+                                               S3Client s3Client,
+                                               KafkaTemplate kafkaTemplate,
+                                               ProducerFactory<String, DocumentRow> producerFactory) throws Exception {
+        /*
+        For collecting the documents of several HOCS systems in multi-system mode. Each system has a pool
+        of connections to its own metadata database, from the document-metadata settings overridden by
+        those of document-metadata.systems.<system>, and its own writers. The producer is shared.
+         */
+        if (partitioned || backfill) {
+            throw new IllegalStateException("Multi-system mode cannot be enabled together with partitioning or backfill mode");
+        }
+        SystemCollections collections = new SystemCollections();
+        Binder binder = Binder.get(environment);
+        for (String system : hocsSystems) {
+            String prefix = "document-metadata.systems." + system.toLowerCase();
+            PGSimpleDataSource connectionSource = new PGSimpleDataSource();
+            binder.bind("document-metadata", Bindable.ofInstance(connectionSource));
+            binder.bind(prefix, Bindable.ofInstance(connectionSource));
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("metadata-" + system.toLowerCase());
+            pool.setDataSource(connectionSource);
+            pool.setMaximumPoolSize(poolSize);
+
+            TxaKafkaItemWriter ingestWriter = deletes ? null : createWriter(s3Client, kafkaTemplate, false, system);
+            TxaKafkaItemWriter deleteWriter = deletes || combined
+                ? createWriter(s3Client, deleteKafkaTemplate(producerFactory), true, system)
+                : null;
+            collections.add(new SystemCollections.SystemCollection(system,
+                pool,
+                environment.getProperty(prefix + ".metadata_schema", metadataSchema),
+                environment.getProperty(prefix + ".metadata_table", metadataTable),
+                ingestWriter,
+                deleteWriter));
+        }
+        return collections;
+    }
+
+    private Step systemCollectionStep(SystemCollections.SystemCollection system,
+                                      boolean deletes,
+                                      JobRepository jobRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      S3Client s3Client,
+                                      S3ItemProcessor processor,
+                                      S3AsyncItemWriter s3AsyncWriter,
+                                      AdaptiveChunkController chunkController,
+                                      ReadCountStepExecutionListener listener,
+                                      S3ConnectionWarmUpListener warmUpListener,
+                                      ExecutionContextPromotionListener promotionListener) {
+        /*
+        The Step collecting one system's documents in multi-system mode, as the mainStep (or the deleteStep)
+        does for a single system. Its reader, manifests, writer and checkpoints are the system's own.
+         */
+        String hocsSystem = system.hocsSystem();
+        AbstractItemCountingItemStreamItemReader<DocumentRow> reader = createReader(system.metadataSource(),
+            chunkController, deletes, system.metadataSchema(), system.metadataTable(), hocsSystem);
+        S3ManifestItemWriter manifestWriter = new S3ManifestItemWriter(s3Client, targetBucket, hocsSystem,
+            manifestGrouping.equalsIgnoreCase("day"), manifestGzip);
+        S3TimestampManager timestampManager = new S3TimestampManager(s3Client, targetBucket, "", deletes, hocsSystem);
+        CheckpointCommitter checkpointCommitter = new CheckpointCommitter(timestampManager, checkpointIntervalChunks, checkpointIntervalSeconds);
+        TxaKafkaItemWriter writer = deletes ? system.deleteWriter() : system.ingestWriter();
+        SimpleStepBuilder<DocumentRow, DocumentRow> builder = chunkStepBuilder(
+                collectionName(hocsSystem, deletes) + "Step", jobRepository, transactionManager, reader, processor, writer,
+                s3AsyncWriter, manifestWriter, checkpointCommitter, chunkController, deletes, hocsSystem)
+            .listener((StepExecutionListener) checkpointCommitter)
+            .listener(promotionListener)  // Must be declared first so its afterStep runs after the ReadCountStepExecutionListener
+            .listener(listener);
+        if (!deletes) {
+            builder.listener(warmUpListener);
+        }
+        return builder.build();
+    }
+
+    private static String collectionName(String hocsSystem, boolean deletes) {
+        return hocsSystem.toLowerCase() + (deletes ? "Delete" : "Ingest");
     }
 
     @Bean
     public Job documentExtractionJob(JobRepository jobRepository,
-                                     JobStartFinishListener listener,
-                                     Step mainStep) {
+                                     JobExplorer jobExplorer,
+                                     JobLauncher jobLauncher,
+                                     PlatformTransactionManager transactionManager,
+                                     S3Client s3Client,
+                                     ObjectProvider<JobStartFinishListener> listener,
+                                     @Qualifier("mainStep") ObjectProvider<Step> mainStep,
+                                     @Qualifier("deleteStep") ObjectProvider<Step> deleteStep,
+                                     ObjectProvider<SystemCollections> systemCollections,
+                                     S3ItemProcessor processor,
+                                     ObjectProvider<S3AsyncItemWriter> s3AsyncWriter,
+                                     ObjectProvider<AdaptiveChunkController> chunkController,
+                                     ReadCountStepExecutionListener readCountListener,
+                                     S3ConnectionWarmUpListener warmUpListener,
+                                     ExecutionContextPromotionListener promotionListener) {
         /*
         Defines the Spring Batch Job.
+        With restarts enabled a failed job instance is restarted by the next launch.
+
+        In combined mode the job runs an ingest collection job and a delete collection job in parallel.
+        Each is a job of its own so that it has its own execution context, where its timestamp is loaded
+        and checkpointed under the usual keys, and its own JobStartFinishListener and notifications.
+
+        In multi-system mode the job runs the collection jobs of every system in parallel in the same way,
+        so a system's progress and failure are its own. A failed collection fails the job but not the
+        other collections, and a restarted job only runs the collections which failed again.
          */
+        if (combined && (deletes || backfill)) {
+            throw new IllegalStateException("Combined mode cannot be enabled together with delete mode or backfill mode");
+        }
+        if (restart && maxPendingChunks > 0) {
+            /*
+            A chunk's transaction saves the reader position once it is written, which in pipelined mode
+            is before its sends are acknowledged. A restart after a pending chunk failed would resume
+            past its documents and they would never be published.
+             */
+            throw new IllegalStateException("Pipelined Kafka writes (max_pending_chunks) cannot be enabled together with job restarts");
+        }
+        JobParametersIncrementer incrementer = restart
+            ? new RestartingRunIdIncrementer(jobExplorer, jobRepository, "documentExtractionJob", startLimit)
+            : new RunIdIncrementer();
+        List<Flow> flows = new ArrayList<>();
+        SystemCollections collections = systemCollections.getIfAvailable();
+        if (collections != null) {
+            for (SystemCollections.SystemCollection system : collections.getSystems()) {
+                for (boolean systemDeletes : new boolean[] {false, true}) {
+                    if ((systemDeletes ? system.deleteWriter() : system.ingestWriter()) == null) {
+                        continue;
+                    }
+                    JobStartFinishListener systemListener = new JobStartFinishListener(s3Client,
+                        targetBucket,
+                        lastCollection,
+                        systemDeletes,
+                        system.hocsSystem(),
+                        new SlackNotification(slackURLMap(), systemDeletes, system.hocsSystem()));
+                    Step systemStep = systemCollectionStep(system, systemDeletes, jobRepository, transactionManager,
+                        s3Client, processor, s3AsyncWriter.getIfAvailable(), chunkController.getIfAvailable(),
+                        readCountListener, warmUpListener, promotionListener);
+                    flows.add(collectionFlow(collectionName(system.hocsSystem(), systemDeletes), systemListener, systemStep,
+                        jobRepository, jobLauncher));
+                }
+            }
+        } else if (combined) {
+            JobStartFinishListener deleteListener = new JobStartFinishListener(s3Client,
+                targetBucket,
+                lastCollection,
+                true,
+                hocsSystem,
+                new SlackNotification(slackURLMap(), true, hocsSystem));
+            flows.add(collectionFlow("ingest", listener.getObject(), mainStep.getObject(), jobRepository, jobLauncher));
+            flows.add(collectionFlow("delete", deleteListener, deleteStep.getObject(), jobRepository, jobLauncher));
+        } else {
+            return new JobBuilder("documentExtractionJob", jobRepository)
+                .incrementer(incrementer)
+                .listener(listener.getObject())
+                .flow(mainStep.getObject())
+                .end()
+                .build();
+        }
         return new JobBuilder("documentExtractionJob", jobRepository)
-            .incrementer(new RunIdIncrementer())
-            .listener(listener)
-            .flow(mainStep)
+            .incrementer(incrementer)
+            .start(flows.get(0))
+            .split(new SimpleAsyncTaskExecutor("collection-"))
+            .add(flows.subList(1, flows.size()).toArray(new Flow[0]))
             .end()
             .build();
     }
 
+    private Flow collectionFlow(String name, JobStartFinishListener listener, Step step,
+                                JobRepository jobRepository, JobLauncher jobLauncher) {
+        /*
+        Runs a collection job as a step of the documentExtractionJob. The collection job is launched
+        with the parameters of the documentExtractionJob so a restarted job restarts it too.
+         */
+        Job job = new JobBuilder(name + "CollectionJob", jobRepository)
+            .listener(listener)
+            .start(step)
+            .build();
+        Step jobStep = new StepBuilder(name + "Collection", jobRepository)
+            .job(job)
+            .launcher(jobLauncher)
+            .startLimit(stepStartLimit())
+            .build();
+        return new FlowBuilder<SimpleFlow>(name + "Flow")
+            .start(jobStep)
+            .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "daemon.enabled", havingValue = "true")
+    public JobScheduler jobScheduler(JobLauncher jobLauncher,
+                                     JobExplorer jobExplorer,
+                                     @Qualifier("documentExtractionJob") Job job,
+                                     @Qualifier("writer") ObjectProvider<TxaKafkaItemWriter> writer,
+                                     @Qualifier("deleteWriter") ObjectProvider<TxaKafkaItemWriter> deleteWriter,
+                                     ObjectProvider<SystemCollections> systemCollections) {
+        /*
+        For running the job again on a schedule in daemon mode.
+         */
+        List<TxaKafkaItemWriter> writers = new ArrayList<>();
+        writer.ifAvailable(writers::add);
+        deleteWriter.ifAvailable(writers::add);
+        systemCollections.ifAvailable(collections -> writers.addAll(collections.getWriters()));
+        JobScheduler jobScheduler = new JobScheduler(jobLauncher, jobExplorer, job, writers, daemonCron, daemonIntervalSeconds);
+        jobScheduler.setRequestDelayMillis(streamingDebounceMs);
+        return jobScheduler;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.enabled", havingValue = "true")
+    public ChangeNotificationListener changeNotificationListener(@Qualifier("metadataConnectionSource") DataSource metadataSource,
+                                                                 ObjectProvider<JobScheduler> jobScheduler) {
+        /*
+        For running the job as soon as documents change in streaming mode, which runs the job with the daemon's scheduler.
+        It holds its own connection (not one of the pool) which LISTENs for as long as the application runs.
+         */
+        JobScheduler scheduler = jobScheduler.getIfAvailable();
+        if (scheduler == null) {
+            throw new IllegalStateException("Streaming mode requires daemon mode (daemon.enabled) to be enabled");
+        }
+        return new ChangeNotificationListener(metadataSource, scheduler, streamingChannel);
+    }
+
 }
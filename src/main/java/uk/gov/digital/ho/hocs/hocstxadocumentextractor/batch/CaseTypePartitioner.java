@@ -0,0 +1,60 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CaseTypePartitioner implements Partitioner {
+    /*
+    Splits the collection into one partition per case type so that each case type
+    can be read, copied and published by its own worker step in parallel.
+
+    Every partition starts from its own watermark (lastSuccessfulCollection.<caseType>)
+    so that a failure in one partition does not force the others to redo their work.
+    Partitions without a watermark of their own start from the job's lastSuccessfulCollection.
+
+    The gridSize is not used to group case types - there is always one partition per case type.
+    It only bounds how many partitions run at once through the partition TaskExecutor.
+     */
+    private static final Logger log = LoggerFactory.getLogger(CaseTypePartitioner.class);
+    public static final String PARTITION_TIMESTAMP_PREFIX = "lastSuccessfulCollection.";
+    private final List<String> caseTypes;
+    private ExecutionContext jobContext;
+
+    CaseTypePartitioner(List<String> caseTypes) {
+        this.caseTypes = caseTypes;
+    }
+
+    @BeforeStep
+    public void saveJobContext(StepExecution stepExecution) {
+        /*
+        Makes the job ExecutionContext (where the watermarks are loaded to) available
+        to the partition method.
+         */
+        this.jobContext = stepExecution.getJobExecution().getExecutionContext();
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        String defaultTimestamp = JobStartFinishListener.startedFrom(this.jobContext);
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        for (String caseType : this.caseTypes) {
+            String timestamp = this.jobContext.getString(PARTITION_TIMESTAMP_PREFIX + caseType, defaultTimestamp);
+            log.info("Creating partition for case type " + caseType + " from timestamp=" + timestamp);
+
+            ExecutionContext partitionContext = new ExecutionContext();
+            partitionContext.putString("caseType", caseType);
+            partitionContext.putString("partitionLastSuccessfulCollection", timestamp);
+            partitions.put("partition-" + caseType, partitionContext);
+        }
+        return partitions;
+    }
+
+}
@@ -0,0 +1,100 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class ChangeNotificationListener implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    /*
+    Streaming mode: LISTENs on a Postgres notification channel of the DECS metadata database and
+    asks the JobScheduler for a run as soon as documents change, rather than waiting for the next
+    scheduled run. See scripts/sql/document_metadata_notify.sql for the trigger which notifies.
+
+    The changed rows are collected by the usual batch query from the last timestamp, so they
+    go through the same case type/type rules, S3 copy and Kafka publish, and the timestamp
+    checkpoint stays in updated_on order. The schedule remains as the catch-up path for any
+    notification missed while the connection was down.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ChangeNotificationListener.class);
+    private static final int POLL_MILLIS = 10000;
+    private final DataSource metadataSource;
+    private final JobScheduler jobScheduler;
+    private final String channel;
+    private volatile boolean running = true;
+    private long reconnectMillis = 30000;
+    private Thread listenerThread;
+
+    ChangeNotificationListener(DataSource metadataSource, JobScheduler jobScheduler, String channel) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid notification channel: " + channel);
+        }
+        log.info("Constructing ChangeNotificationListener to listen on channel " + channel);
+        this.metadataSource = metadataSource;
+        this.jobScheduler = jobScheduler;
+        this.channel = channel;
+    }
+
+    void setReconnectMillis(long reconnectMillis) {
+        this.reconnectMillis = reconnectMillis;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        this.listenerThread = new Thread(this::listen, "change-notification-listener");
+        this.listenerThread.setDaemon(true);
+        this.listenerThread.start();
+    }
+
+    protected void listen() {
+        boolean reconnecting = false;
+        while (this.running) {
+            try (Connection connection = this.metadataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + this.channel);
+                }
+                log.info("Listening for changes on channel " + this.channel);
+                if (reconnecting) {
+                    // collect any changes made while disconnected
+                    this.jobScheduler.requestRun();
+                    reconnecting = false;
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (this.running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        log.info("Received " + notifications.length + " change notifications");
+                        this.jobScheduler.requestRun();
+                    }
+                }
+            } catch (SQLException e) {
+                if (!this.running) {
+                    return;
+                }
+                log.error("Listening for changes failed, reconnecting in " + this.reconnectMillis + "ms: " + e);
+                reconnecting = true;
+                try {
+                    Thread.sleep(this.reconnectMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        this.running = false;
+        if (this.listenerThread != null) {
+            this.listenerThread.interrupt();
+        }
+    }
+}
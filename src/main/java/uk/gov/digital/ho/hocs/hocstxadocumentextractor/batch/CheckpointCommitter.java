@@ -0,0 +1,176 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CheckpointCommitter implements ChunkListener, StepExecutionListener {
+    /*
+    Commits the lastSuccessfulCollection checkpoint to the target S3 while the step is running,
+    every chunkInterval chunks and/or every secondsInterval seconds (0 disables either).
+
+    Without it the checkpoint is only committed by the TxaKafkaItemWriter when the application
+    shuts down, so a hard kill (OOM, SIGKILL after the grace period) loses the progress of the
+    whole run. With it at most an interval's worth of documents are collected again.
+
+    The checkpoints are read from the step ExecutionContexts after each chunk's transaction,
+    where only timestamps of documents acknowledged by Kafka are recorded.
+    A failed periodic commit is logged and retried at the next interval, it does not fail the step.
+
+    In delete mode with the ledger enabled the published deletes are committed before the checkpoint,
+    as the TxaKafkaItemWriter does, so a delete is never behind a committed checkpoint without being
+    in the ledger.
+
+    The committer outlives a run in daemon mode, so its state is reset before each run and the
+    existing record is loaded again rather than the one the first run loaded. It is registered as a
+    step listener on the step a run starts once (the manager step in partitioned mode) rather than on
+    the worker steps, whose starts would reset the state the partitions share.
+     */
+    private static final Logger log = LoggerFactory.getLogger(CheckpointCommitter.class);
+    private final S3TimestampManager timestampManager;
+    private final int chunkInterval;
+    private final long intervalMillis;
+    private int chunksSinceCommit = 0;
+    private long lastCommitMillis = 0;
+    private boolean metadataLoaded = false;
+    private Map<String, String> lastCommitted = new HashMap<>();
+    private PublishedDeletesLedger ledger;
+
+    CheckpointCommitter(S3TimestampManager timestampManager, int chunkInterval, int secondsInterval) {
+        log.info("Constructing CheckpointCommitter to commit every " + chunkInterval + " chunks / " + secondsInterval + " seconds");
+        this.timestampManager = timestampManager;
+        this.chunkInterval = chunkInterval;
+        this.intervalMillis = secondsInterval * 1000L;
+    }
+
+    public void setLedger(PublishedDeletesLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @Override
+    public synchronized void beforeStep(StepExecution stepExecution) {
+        this.chunksSinceCommit = 0;
+        this.lastCommitMillis = 0;
+        this.metadataLoaded = false;
+        this.lastCommitted = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void afterChunk(ChunkContext context) {
+        /*
+        Synchronized as the partitions' worker steps share this listener in partitioned mode.
+         */
+        if (this.chunkInterval <= 0 && this.intervalMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (this.lastCommitMillis == 0) {
+            this.lastCommitMillis = now;  // the time interval starts from the first chunk
+        }
+        this.chunksSinceCommit++;
+
+        boolean chunksDue = this.chunkInterval > 0 && this.chunksSinceCommit >= this.chunkInterval;
+        boolean timeDue = this.intervalMillis > 0 && now - this.lastCommitMillis >= this.intervalMillis;
+        if (chunksDue || timeDue) {
+            commit(context.getStepContext().getStepExecution());
+        }
+    }
+
+    public synchronized boolean commit(StepExecution stepExecution) {
+        this.chunksSinceCommit = 0;
+        this.lastCommitMillis = System.currentTimeMillis();
+
+        Map<String, String> checkpoints = collectCheckpoints(stepExecution);
+        if (checkpoints.isEmpty() || checkpoints.equals(this.lastCommitted)) {
+            return true;
+        }
+        try {
+            if (this.ledger != null) {
+                this.ledger.commit();
+            }
+            log.info("Committing in-flight checkpoint " + checkpoints);
+            if (!this.metadataLoaded) {
+                // loads the existing record so keys other than the checkpoints are kept
+                this.timestampManager.getTimestamp();
+                this.metadataLoaded = true;
+            }
+            boolean success = this.timestampManager.putTimestamps(checkpoints);
+            if (success) {
+                this.lastCommitted = new HashMap<>(checkpoints);
+            } else {
+                log.warn("Committing the in-flight checkpoint failed, it will be retried at the next interval");
+            }
+            return success;
+        } catch (IOException | SdkException e) {
+            log.warn("Committing the in-flight checkpoint failed, it will be retried at the next interval: " + e);
+            return false;
+        }
+    }
+
+    public static Map<String, String> collectCheckpoints(StepExecution stepExecution) {
+        /*
+        Gathers the timestamps to commit to the target S3.
+
+        Normally this is just the lastSuccessfulCollection of the step. In partitioned mode each
+        partition (worker step) has its own lastSuccessfulCollection.<caseType> timestamp and the
+        job lastSuccessfulCollection is the earliest of the partitions' timestamps, since every
+        document before that has been published whichever partition it belongs to.
+
+        In backfill mode the partitions are time slices instead, see TimeSlicePartitioner.
+
+        Any step execution of the job can be given, in partitioned mode the partitions are found
+        from the job execution.
+         */
+        Map<String, String> checkpoints = new HashMap<>();
+        boolean partitioned = false;
+        Timestamp earliestTimestamp = null;
+        List<StepExecution> slices = new ArrayList<>();
+        for (StepExecution execution : stepExecution.getJobExecution().getStepExecutions()) {
+            ExecutionContext context = execution.getExecutionContext();
+            if (!context.containsKey("partitionLastSuccessfulCollection")) {
+                continue;
+            }
+            if (context.containsKey("sliceEnd")) {
+                slices.add(execution);
+                continue;
+            }
+            partitioned = true;
+            String caseType = context.getString("caseType");
+            String partitionTimestamp = context.getString("lastSuccessfulCollection",
+                context.getString("partitionLastSuccessfulCollection"));
+            if (context.containsKey("lastSuccessfulCollection")) {
+                checkpoints.put(CaseTypePartitioner.PARTITION_TIMESTAMP_PREFIX + caseType, partitionTimestamp);
+            }
+            Timestamp timestamp = Timestamp.valueOf(partitionTimestamp);
+            if (earliestTimestamp == null || timestamp.before(earliestTimestamp)) {
+                earliestTimestamp = timestamp;
+            }
+        }
+
+        if (!slices.isEmpty()) {
+            return TimeSlicePartitioner.collectCheckpoints(slices,
+                stepExecution.getJobExecution().getExecutionContext().getString("lastSuccessfulCollection", null));
+        }
+        if (!partitioned) {
+            String lastCheckpointTimestamp = stepExecution.getExecutionContext().getString("lastSuccessfulCollection", "empty");
+            if (!lastCheckpointTimestamp.equals("empty")) {
+                checkpoints.put("lastSuccessfulCollection", lastCheckpointTimestamp);
+            }
+        } else if (!checkpoints.isEmpty()) {
+            checkpoints.put("lastSuccessfulCollection", earliestTimestamp.toString());
+        }
+        return checkpoints;
+    }
+}
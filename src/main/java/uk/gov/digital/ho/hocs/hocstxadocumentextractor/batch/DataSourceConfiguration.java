@@ -2,6 +2,8 @@ package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
 
 import com.zaxxer.hikari.HikariDataSource;
 import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
@@ -21,20 +23,21 @@ public class DataSourceConfiguration {
     @ConfigurationProperties("spring-batch-db.datasource")
     DataSource springBatchDb() {
         /*
-        An in-memory database for Spring Batch to read/write job
-        execution metadata to. Different to the data sources used for
-        actual document metadata.
+        The database Spring Batch reads/writes job execution metadata to
+        (spring-batch-db). In-memory by default, a durable database keeps the
+        JobRepository across runs so failed job instances can be restarted.
+        Different to the data sources used for actual document metadata.
          */
         DataSourceBuilder builder = DataSourceBuilder.create();
         builder.type(HikariDataSource.class);
         return builder.build();
     }
 
-    @Bean("metadataSource")
+    @Bean("metadataConnectionSource")
     @ConfigurationProperties("document-metadata")
-    public DataSource metadataSource() {
+    public PGSimpleDataSource metadataConnectionSource() {
         /*
-        The data source containing the metadata of documents we wish
+        Connections to the database containing the metadata of documents we wish
         to extract.
         DataSource settings are set directly from the document-metadata section of
         the application.yml
@@ -43,4 +46,20 @@ public class DataSourceConfiguration {
         return metaSource;
     }
 
+    @Bean("metadataSource")
+    public DataSource metadataSource(@Qualifier("metadataConnectionSource") PGSimpleDataSource metadataConnectionSource,
+                                     @Value("${document-metadata.pool_size}") Integer poolSize) {
+        /*
+        The data source containing the metadata of documents we wish
+        to extract, as a pool of the connections above.
+        Postgres keeps prepared statements (and their plans) per connection, so
+        pooled connections let later runs and partitions reuse those of the first.
+         */
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName("metadata");
+        pool.setDataSource(metadataConnectionSource);
+        pool.setMaximumPoolSize(poolSize);
+        return pool;
+    }
+
 }
@@ -0,0 +1,177 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class DocumentMetadataQueries {
+    /*
+    The rules (SQL) which determine which documents are collected when the Job executes.
+
+    These are shared by the cursor based PostgresItemReader and the keyset paged
+    PostgresPagingItemReader so the selection is identical regardless of the read strategy.
+    Neither query includes an ORDER BY clause since each reader orders the results itself.
+
+    Which document types are collected for each case type is configured (case_type_document_types)
+    and joined as a pair of array parameters, so that Postgres can look each (case type, type) pair
+    up in the index created by scripts/sql/document_metadata_case_type_index.sql.
+     */
+    static final String NO_UPPER_BOUND = "9999-12-31 23:59:59";
+    static final String SELECT_COLUMNS = "uuid, external_reference_uuid, case_type, type, pdf_link, status, updated_on, deleted_on";
+
+    private DocumentMetadataQueries() {}
+
+    static String resolve(String templateSQL, String metadataSchema, String metadataTable) {
+        /*
+        Replaces the schema and table placeholders in a query template. Everything which varies
+        between runs and partitions is bound as a parameter instead (see parameters), so that one
+        server-side prepared statement, and its plan, is reused by every run on a connection.
+         */
+        return templateSQL
+            .replace("$schema", metadataSchema)
+            .replace("$table", metadataTable);
+    }
+
+    static Map<String, List<String>> parseDocumentTypes(String[] entries) {
+        /*
+        Parses the document-metadata.case_type_document_types configuration, entries of the form
+        case_type=type|type|..., into the document types collected for each case type.
+         */
+        Map<String, List<String>> documentTypes = new LinkedHashMap<>();
+        for (String entry : entries) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] caseTypeAndTypes = entry.split("=", 2);
+            if (caseTypeAndTypes.length != 2 || !caseTypeAndTypes[0].trim().matches("[A-Za-z0-9]+")) {
+                throw new IllegalArgumentException("Invalid case type document types: " + entry);
+            }
+            List<String> types = documentTypes.computeIfAbsent(caseTypeAndTypes[0].trim(), k -> new ArrayList<>());
+            for (String type : caseTypeAndTypes[1].split("\\|")) {
+                if (!type.isBlank()) {
+                    types.add(type.trim());
+                }
+            }
+        }
+        if (documentTypes.isEmpty()) {
+            throw new IllegalArgumentException("No case type document types are configured");
+        }
+        return documentTypes;
+    }
+
+    static Object[] parameters(String timestamp, String upperBound, Map<String, List<String>> documentTypes, String caseType) {
+        /*
+        The values bound to the parameters of a selection: the timestamp, the upper bound (the end
+        of the slice in backfill mode), then the allow-list as parallel arrays of case types and
+        document types. In partitioned mode the allow-list is restricted to the partition's case
+        type, so every partition runs the same statement.
+         */
+        List<String> caseTypes = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (Map.Entry<String, List<String>> caseTypeTypes : documentTypes.entrySet()) {
+            if (caseType != null && !caseType.isEmpty() && !caseTypeTypes.getKey().equals(caseType)) {
+                continue;
+            }
+            for (String type : caseTypeTypes.getValue()) {
+                caseTypes.add(caseTypeTypes.getKey());
+                types.add(type);
+            }
+        }
+        return new Object[] {timestamp,
+            upperBound != null ? upperBound : NO_UPPER_BOUND,
+            caseTypes.toArray(new String[0]),
+            types.toArray(new String[0])};
+    }
+
+    static String ingestSelection() {
+        /*
+        Selects documents to INGEST into the text analytics pipeline
+         */
+        String ingestSelection = """
+            WITH all_case_document_types AS (
+                SELECT
+                    uuid::text,
+                    external_reference_uuid::text,
+                    RIGHT(external_reference_uuid::text, 2) as case_type,
+                    type,
+                    pdf_link,
+                    status,
+                    updated_on,
+                    deleted_on
+                FROM
+                    $schema.$table
+                WHERE
+                    status in ('UPLOADED')
+                    AND pdf_link IS NOT NULL
+                    AND deleted_on IS NULL
+                    AND deleted != True
+                    AND updated_on > CAST(? AS timestamp)
+                    AND updated_on <= CAST(? AS timestamp)
+            )
+            SELECT
+                document.uuid,
+                document.external_reference_uuid,
+                document.case_type,
+                document.type,
+                document.pdf_link,
+                document.status,
+                document.updated_on,
+                document.deleted_on
+            FROM
+                all_case_document_types AS document
+                JOIN unnest(?, ?) AS allowed (case_type, type)
+                    ON document.case_type = allowed.case_type
+                    AND document.type = allowed.type
+            """;
+        return ingestSelection;
+    }
+
+    static String deleteSelection() {
+        /*
+        Selects documents to DELETE from the text analytics pipeline.
+
+        This query looks for all newly deleted relevant documents since the last collection of deletes
+        plus a window of 1 week. This additional 1 week is meant to ensure all deletes are fully
+        propagated downstream and deal with the edge case where a delete message is processed by the
+        downstream application before an ingest message is fully processed.
+         */
+        String deleteSelection = """
+            WITH all_case_document_types AS (
+                SELECT
+                    uuid::text,
+                    external_reference_uuid::text,
+                    RIGHT(external_reference_uuid::text, 2) as case_type,
+                    type,
+                    pdf_link,
+                    status,
+                    updated_on,
+                    deleted_on
+                FROM
+                    $schema.$table
+                WHERE
+                    status in ('UPLOADED')
+                    AND pdf_link IS NOT NULL
+                    AND deleted = True
+                    AND deleted_on > CAST(? AS timestamp) - interval '1 week'
+                    AND deleted_on <= CAST(? AS timestamp)
+            )
+            SELECT
+                document.uuid,
+                document.external_reference_uuid,
+                document.case_type,
+                document.type,
+                document.pdf_link,
+                document.status,
+                document.updated_on,
+                document.deleted_on
+            FROM
+                all_case_document_types AS document
+                JOIN unnest(?, ?) AS allowed (case_type, type)
+                    ON document.case_type = allowed.case_type
+                    AND document.type = allowed.type
+            """;
+        return deleteSelection;
+    }
+
+}
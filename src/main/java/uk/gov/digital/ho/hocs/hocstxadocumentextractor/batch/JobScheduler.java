@@ -0,0 +1,123 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class JobScheduler implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    /*
+    Daemon mode: rather than exiting after the collection run at start-up, the application stays
+    up and launches the documentExtractionJob again on a cron schedule, or a fixed delay after the
+    previous run finished. The S3 and Kafka clients (and their connections) are reused by every run.
+
+    Each run gets the next job parameters from the job's incrementer, as a run at start-up does.
+    Its timestamps are committed to S3 once it finishes and the JobStartFinishListener keeps them
+    in memory as the starting point of the next run. In combined mode both writers commit their timestamps.
+     */
+    private static final Logger log = LoggerFactory.getLogger(JobScheduler.class);
+    private final JobLauncher jobLauncher;
+    private final JobExplorer jobExplorer;
+    private final Job job;
+    private final List<TxaKafkaItemWriter> writers;
+    private final Trigger trigger;
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    private final AtomicBoolean runRequested = new AtomicBoolean(false);
+    private long requestDelayMillis = 0;
+
+    JobScheduler(JobLauncher jobLauncher, JobExplorer jobExplorer, Job job, List<TxaKafkaItemWriter> writers,
+                 String cron, int intervalSeconds) {
+        this.jobLauncher = jobLauncher;
+        this.jobExplorer = jobExplorer;
+        this.job = job;
+        this.writers = writers;
+        if (cron != null && !cron.isBlank()) {
+            log.info("Constructing JobScheduler to run " + job.getName() + " on the schedule " + cron);
+            this.trigger = new CronTrigger(cron);
+        } else {
+            log.info("Constructing JobScheduler to run " + job.getName() + " " + intervalSeconds + " seconds after each run");
+            PeriodicTrigger periodicTrigger = new PeriodicTrigger(Duration.ofSeconds(intervalSeconds));
+            periodicTrigger.setInitialDelay(Duration.ofSeconds(intervalSeconds));
+            this.trigger = periodicTrigger;
+        }
+        this.scheduler.setThreadNamePrefix("job-scheduler-");
+        this.scheduler.initialize();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        /*
+        The application is ready once the run at start-up has finished.
+         */
+        commitTimestamps();
+        this.scheduler.schedule(this::runJob, this.trigger);
+    }
+
+    public void setRequestDelayMillis(long requestDelayMillis) {
+        this.requestDelayMillis = requestDelayMillis;
+    }
+
+    public void requestRun() {
+        /*
+        Runs the job requestDelayMillis from now, outside of the schedule (see ChangeNotificationListener).
+        Requests made before that run starts are collected by it. The scheduler has one thread so the
+        run never overlaps another run, a request made during a run is run after it.
+         */
+        if (this.runRequested.compareAndSet(false, true)) {
+            this.scheduler.schedule(this::runRequestedJob, Instant.now().plusMillis(this.requestDelayMillis));
+        }
+    }
+
+    protected void runRequestedJob() {
+        /*
+        Only the requested run clears the request. A scheduled run which starts while the requested
+        run is still queued leaves it set, so further requests are collected by the queued run
+        rather than queueing a duplicate.
+         */
+        this.runRequested.set(false);
+        runJob();
+    }
+
+    protected void runJob() {
+        try {
+            JobParameters jobParameters = new JobParametersBuilder(this.jobExplorer)
+                .getNextJobParameters(this.job)
+                .toJobParameters();
+            log.info("Launching scheduled run of " + this.job.getName() + " with " + jobParameters);
+            JobExecution jobExecution = this.jobLauncher.run(this.job, jobParameters);
+            log.info("Scheduled run finished with status " + jobExecution.getStatus());
+        } catch (Exception e) {
+            // a failed run must not stop the schedule, the next run starts from the timestamps it reached
+            log.error("Scheduled run could not be launched: " + e);
+        } finally {
+            commitTimestamps();
+        }
+    }
+
+    private void commitTimestamps() {
+        for (TxaKafkaItemWriter writer : this.writers) {
+            writer.commitTimestamp();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        this.scheduler.shutdown();
+    }
+}
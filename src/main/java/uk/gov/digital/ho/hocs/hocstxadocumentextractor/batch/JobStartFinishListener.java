@@ -5,27 +5,35 @@ import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+
+import software.amazon.awssdk.services.s3.S3Client;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
 
 public class JobStartFinishListener implements JobExecutionListener {
 
     private static final Logger log = LoggerFactory.getLogger(JobStartFinishListener.class);
+    // the timestamp a job instance was first started from, which the promotion listener never overwrites
+    public static final String STARTED_FROM_KEY = "startedFromCollection";
     private S3TimestampManager timestampManager;
     private final SlackNotification slackNotification;
     private boolean deletes;
     private String hocsSystem;
+    private Map<String, String> watermark;
 
-    JobStartFinishListener(String targetBucket,
-                           String endpointURL,
+    JobStartFinishListener(S3Client s3Client,
+                           String targetBucket,
                            String lastCollection,
                            boolean deletes,
                            String hocsSystem,
-                           SlackNotification slackNotification) throws URISyntaxException {
-        this.timestampManager = new S3TimestampManager(targetBucket, endpointURL, lastCollection, deletes, hocsSystem);
+                           SlackNotification slackNotification) {
+        this.timestampManager = new S3TimestampManager(s3Client, targetBucket, lastCollection, deletes, hocsSystem);
         this.slackNotification = slackNotification;
         this.deletes = deletes;
         this.hocsSystem = hocsSystem;
@@ -39,6 +47,27 @@ public class JobStartFinishListener implements JobExecutionListener {
         String mode = this.deletes ? "DELETE" : "INGEST";
         log.info(String.format("Application is running in %s mode for %s.", mode, this.hocsSystem));
         log.info("Executing beforeJob tasks...");
+        if (jobExecution.getExecutionContext().containsKey("lastSuccessfulCollection")) {
+            /*
+            A restarted job instance keeps the timestamp it was first started with, so the readers
+            run the same query and the saved reader positions still apply. The lastSuccessfulCollection
+            carried over may have been advanced by the failed step (it is promoted whatever the step's
+            outcome) so the readers use the STARTED_FROM_KEY timestamp instead, see startedFrom.
+             */
+            log.info("Job instance is being restarted, keeping its timestamp "
+                + startedFrom(jobExecution.getExecutionContext()));
+            return;
+        }
+        if (this.watermark != null) {
+            /*
+            In daemon mode the timestamps reached by the previous run are kept in memory,
+            so they are not read back from S3 for every run.
+             */
+            log.info("Using the timestamps of the previous run: " + this.watermark);
+            this.watermark.forEach(jobExecution.getExecutionContext()::putString);
+            rememberStart(jobExecution.getExecutionContext());
+            return;
+        }
         String lastSuccessfulCollection = null;
         try {
             lastSuccessfulCollection = this.timestampManager.getTimestamp();
@@ -49,6 +78,28 @@ public class JobStartFinishListener implements JobExecutionListener {
         }
         log.info("Storing timestamp in job execution context");
         jobExecution.getExecutionContext().putString("lastSuccessfulCollection", lastSuccessfulCollection);
+        // per case type timestamps are only present once the job has run in partitioned mode
+        for (Map.Entry<String, String> partitionTimestamp : this.timestampManager.getPartitionTimestamps().entrySet()) {
+            jobExecution.getExecutionContext().putString(partitionTimestamp.getKey(), partitionTimestamp.getValue());
+        }
+        rememberStart(jobExecution.getExecutionContext());
+    }
+
+    private static void rememberStart(ExecutionContext jobContext) {
+        if (jobContext.containsKey("lastSuccessfulCollection")) {
+            jobContext.putString(STARTED_FROM_KEY, jobContext.getString("lastSuccessfulCollection"));
+        }
+    }
+
+    public static String startedFrom(ExecutionContext jobContext) {
+        /*
+        The timestamp the readers start from: the one the job instance was first started from,
+        or the lastSuccessfulCollection of an instance started before it was recorded.
+         */
+        if (jobContext.containsKey(STARTED_FROM_KEY)) {
+            return jobContext.getString(STARTED_FROM_KEY);
+        }
+        return jobContext.getString("lastSuccessfulCollection");
     }
 
     @Override
@@ -72,12 +123,16 @@ public class JobStartFinishListener implements JobExecutionListener {
         log.info("Finished at " + endTime);
         long noOfMinutes = ChronoUnit.MINUTES.between(startTime,endTime);
         log.info("Number of documents processed was " + readCount + " in approximately " + noOfMinutes + " minutes");
+        long skippedCopyCount = jobExecution.getExecutionContext().getLong("skippedCopyCount", 0L);
+        log.info("Number of documents already on the target bucket (not copied again) was " + skippedCopyCount);
 
         long noOfMillis = ChronoUnit.MILLIS.between(startTime,endTime);
         double noOfSeconds = noOfMillis / 1000.0;
         double docsPerSecond = readCount / noOfSeconds;
         log.info(String.format("documents/second ~ %.2f", docsPerSecond));
 
+        rememberWatermark(jobExecution);
+
         // Notify
         log.info("Sending job outcome notifications...");
         if(jobExecution.getStatus() == BatchStatus.COMPLETED) {
@@ -94,4 +149,28 @@ public class JobStartFinishListener implements JobExecutionListener {
             this.slackNotification.publishMessage(failureMessage, "txa");
         }
     }
+
+    protected void rememberWatermark(JobExecution jobExecution) {
+        /*
+        Keeps the timestamps the next run should start from: those this run started from,
+        advanced to the checkpoints of every document it published.
+
+        A failed run still advances them to the checkpoints it reached, which only record documents
+        acknowledged by Kafka. A run which failed before its step started keeps the previous timestamps.
+        They are never dropped for the S3 record, as that would start the next run from the
+        METADATA_LAST_COLLECTION override again when one is set.
+         */
+        if (jobExecution.getStepExecutions().isEmpty()) {
+            return;
+        }
+        Map<String, String> nextWatermark = new HashMap<>();
+        for (Map.Entry<String, Object> entry : jobExecution.getExecutionContext().entrySet()) {
+            if (entry.getKey().startsWith("lastSuccessfulCollection")) {
+                nextWatermark.put(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        nextWatermark.putAll(CheckpointCommitter.collectCheckpoints(stepExecution));
+        this.watermark = nextWatermark;
+    }
 }
@@ -25,6 +25,13 @@ public class KafkaConfiguration {
     private @Value("${kafka.ingest_topic}") String ingestTopic;
     private @Value("${kafka.delete_topic}") String deleteTopic;
     private @Value("${kafka.use_ssl}") boolean useSSL;
+    private @Value("${kafka.producer.compression_type}") String compressionType;
+    private @Value("${kafka.producer.linger_ms}") String lingerMs;
+    private @Value("${kafka.producer.batch_size}") String batchSize;
+    private @Value("${kafka.producer.buffer_memory}") String bufferMemory;
+    private @Value("${kafka.producer.max_in_flight_requests}") String maxInFlightRequests;
+    private @Value("${kafka.producer.enable_idempotence}") String enableIdempotence;
+    private @Value("${kafka.producer.acks}") String acks;
     private @Value("${mode.delete}") boolean deletes;
 
     @Bean
@@ -38,6 +45,19 @@ public class KafkaConfiguration {
         configProperties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProperties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, DocumentSerializer.class);
 
+        // Batching and compression - the document events are small and very alike so they
+        // compress well once enough of them are batched together. Each setting is only passed
+        // to the producer when it is set, otherwise the Kafka client's default applies.
+        putIfSet(configProperties, ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        putIfSet(configProperties, ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        putIfSet(configProperties, ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        putIfSet(configProperties, ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+
+        // Delivery guarantees - idempotence requires acks=all and at most 5 requests in flight
+        putIfSet(configProperties, ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlightRequests);
+        putIfSet(configProperties, ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, enableIdempotence);
+        putIfSet(configProperties, ProducerConfig.ACKS_CONFIG, acks);
+
         // Use TLS for the real kafka clusters but not for a local docker-composed kafka cluster
         if (useSSL) {
             configProperties.put(CommonClientConfigs.SECURITY_PROTOCOL_CONFIG, "SSL");
@@ -48,6 +68,13 @@ public class KafkaConfiguration {
         return new DefaultKafkaProducerFactory<>(configProperties);
     }
 
+    private static void putIfSet(Map<String, Object> configProperties, String key, String value) {
+        // the producer parses the string values of its settings itself
+        if (value != null && !value.isBlank()) {
+            configProperties.put(key, value.trim());
+        }
+    }
+
     @Bean
     public KafkaTemplate<String, DocumentRow> kafkaTemplate() {
         /*
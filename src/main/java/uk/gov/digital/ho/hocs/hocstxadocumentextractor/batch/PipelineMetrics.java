@@ -0,0 +1,132 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+final class PipelineMetrics {
+    /*
+    Micrometer meters for each stage of the pipeline.
+
+    The meters are registered with the global registry so that the readers, processors and
+    writers (which are not all Spring beans) can record to them directly. Spring Boot adds its
+    registries to the global registry, so they are exported with the Spring Batch job/step/chunk
+    metrics, see the management section of the application.yml.
+
+    The meters of a collection (its reader, Kafka writer and chunks) are tagged with its hocs_system
+    and delete mode, see collectionTags, as in combined and multi-system mode several collections
+    run in one application. The S3 meters are not, the processor is shared by the collections.
+    Each meter is built once and then looked up in the meters map, rather than built and
+    registered again for every request.
+     */
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+    private static final Map<String, Meter> meters = new ConcurrentHashMap<>();
+    private static final Map<Tags, AtomicLong> checkpointLags = new ConcurrentHashMap<>();
+
+    static final Timer KAFKA_FLUSH = Timer.builder("txa.kafka.flush")
+        .description("Time to flush the producer")
+        .register(registry);
+    private static final AtomicLong chunkSize = registry.gauge("txa.chunk.size", new AtomicLong());
+
+    private PipelineMetrics() {}
+
+    static Tags collectionTags(String hocsSystem, boolean deletes) {
+        return Tags.of("hocs_system", hocsSystem, "delete", String.valueOf(deletes));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M extends Meter> M meter(String name, Tags tags, Supplier<M> builder) {
+        return (M) meters.computeIfAbsent(name + tags, key -> builder.get());
+    }
+
+    static Timer readerRead(Tags tags) {
+        return meter("txa.reader.read", tags, () -> Timer.builder("txa.reader.read")
+            .description("Time to read one row, including fetching the next rows from the database")
+            .tags(tags)
+            .publishPercentiles(0.5, 0.99)
+            .register(registry));
+    }
+
+    static Counter rowsRead(Tags tags) {
+        return meter("txa.reader.rows", tags, () -> Counter.builder("txa.reader.rows")
+            .description("Rows read and mapped to documents")
+            .tags(tags)
+            .register(registry));
+    }
+
+    static Counter deletesSkipped(Tags tags) {
+        return meter("txa.kafka.deletes.skipped", tags, () -> Counter.builder("txa.kafka.deletes.skipped")
+            .description("Deletes not published again as they are in the PublishedDeletesLedger")
+            .tags(tags)
+            .register(registry));
+    }
+
+    static Timer chunk(Tags tags) {
+        return meter("txa.chunk", tags, () -> Timer.builder("txa.chunk")
+            .description("Time to read, process, write and commit a chunk")
+            .tags(tags)
+            .publishPercentiles(0.5, 0.99)
+            .register(registry));
+    }
+
+    static void recordS3Request(Timer.Sample sample, String operation, boolean success) {
+        /*
+        operation is one of copy, multipart_copy, put or async_transfer.
+         */
+        Tags tags = Tags.of("operation", operation, "outcome", success ? "success" : "error");
+        sample.stop(meter("txa.s3.request", tags, () -> Timer.builder("txa.s3.request")
+            .description("Time of each S3 request, failed requests have the error outcome")
+            .tags(tags)
+            .publishPercentiles(0.5, 0.99)
+            .register(registry)));
+    }
+
+    static void recordS3Bytes(String operation, long bytes) {
+        Tags tags = Tags.of("operation", operation);
+        PipelineMetrics.<Counter>meter("txa.s3.bytes", tags, () -> Counter.builder("txa.s3.bytes")
+            .description("Bytes copied or uploaded to the target bucket, where the size is known")
+            .tags(tags)
+            .register(registry))
+            .increment(bytes);
+    }
+
+    static void recordKafkaAck(Timer.Sample sample, Tags collectionTags, boolean success) {
+        Tags tags = collectionTags.and("outcome", success ? "success" : "error");
+        sample.stop(meter("txa.kafka.ack", tags, () -> Timer.builder("txa.kafka.ack")
+            .description("Time from sending a document event to its acknowledgement by the broker")
+            .tags(tags)
+            .publishPercentiles(0.5, 0.99)
+            .register(registry)));
+    }
+
+    static void setCheckpointLag(Tags tags, long seconds) {
+        checkpointLags.computeIfAbsent(tags, key -> registry.gauge("txa.checkpoint.lag.seconds", key, new AtomicLong()))
+            .set(seconds);
+    }
+
+    static void setChunkSize(int size) {
+        chunkSize.set(size);
+    }
+
+    static double errorCount() {
+        /*
+        The number of failed S3 requests and Kafka sends so far, see AdaptiveChunkController.
+         */
+        double errors = 0;
+        for (Timer timer : registry.find("txa.s3.request").tag("outcome", "error").timers()) {
+            errors += timer.count();
+        }
+        for (Timer timer : registry.find("txa.kafka.ack").tag("outcome", "error").timers()) {
+            errors += timer.count();
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+public class PipelineMetricsListener implements ChunkListener {
+    /*
+    Records the time of each chunk (including its commit) and the checkpoint lag, the time
+    between now and the lastSuccessfulCollection timestamp acknowledged so far. A lag which
+    grows mid-run means documents are being collected slower than they are updated.
+    Both are tagged with the hocs_system and delete mode of the step's collection.
+     */
+    private final ThreadLocal<Timer.Sample> chunkSample = new ThreadLocal<>();
+    private final Tags tags;
+    private final Timer chunkTimer;
+
+    PipelineMetricsListener(String hocsSystem, boolean deletes) {
+        this.tags = PipelineMetrics.collectionTags(hocsSystem, deletes);
+        this.chunkTimer = PipelineMetrics.chunk(this.tags);
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        this.chunkSample.set(Timer.start());
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        recordChunk();
+        String checkpoint = CheckpointCommitter.collectCheckpoints(context.getStepContext().getStepExecution())
+            .get("lastSuccessfulCollection");
+        if (checkpoint != null) {
+            LocalDateTime checkpointTime = Timestamp.valueOf(checkpoint).toLocalDateTime();
+            PipelineMetrics.setCheckpointLag(this.tags, Duration.between(checkpointTime, LocalDateTime.now()).toSeconds());
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        recordChunk();
+    }
+
+    private void recordChunk() {
+        Timer.Sample sample = this.chunkSample.get();
+        if (sample != null) {
+            sample.stop(this.chunkTimer);
+            this.chunkSample.remove();
+        }
+    }
+}
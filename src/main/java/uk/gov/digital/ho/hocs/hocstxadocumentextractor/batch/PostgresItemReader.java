@@ -1,5 +1,8 @@
 package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.JobExecution;
@@ -7,10 +10,13 @@ import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.annotation.BeforeStep;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
 import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRowMapper;
 
 import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
 
 public class PostgresItemReader extends JdbcCursorItemReader<DocumentRow> {
     /*
@@ -24,23 +30,37 @@ public class PostgresItemReader extends JdbcCursorItemReader<DocumentRow> {
     public String metadataTable;
     public int fetchSize;
     public boolean deletes;
+    public String caseType;
+    public String sliceEnd;
+    public Map<String, List<String>> documentTypes;
+    public Object[] queryParameters;
+    public AdaptiveChunkController chunkController;
+    private final Timer readTimer;
+    private final Counter rowsRead;
 
     public PostgresItemReader(final DataSource dataSource,
                               final String metadataSchema,
                               final String metadataTable,
                               final int fetchSize,
                               final boolean deletes,
-                              final String hocsSystem) {
+                              final String hocsSystem,
+                              final Map<String, List<String>> documentTypes) {
         log.info("Constructing PostgresItemReader");
         this.dataSource = dataSource;
         this.metadataSchema = metadataSchema;
         this.metadataTable = metadataTable;
         this.fetchSize = fetchSize;
         this.deletes = deletes;
+        Tags metricTags = PipelineMetrics.collectionTags(hocsSystem, deletes);
+        this.readTimer = PipelineMetrics.readerRead(metricTags);
+        this.rowsRead = PipelineMetrics.rowsRead(metricTags);
+        this.documentTypes = documentTypes;
 
         String temp_query = "";
         setDataSource(this.dataSource);
         setFetchSize(this.fetchSize);
+        // the Postgres driver only fetches fetchSize rows at a time outside of auto-commit
+        setConnectionAutoCommit(false);
         setName("documentReader");
         setSql(temp_query);
         setRowMapper(new DocumentRowMapper(hocsSystem));
@@ -51,13 +71,26 @@ public class PostgresItemReader extends JdbcCursorItemReader<DocumentRow> {
         /*
         This selects the correct SQL query for the given mode (deletes or ingest)
         and modifies the SQL statement of the DataSource to the correct query, replacing
-        placeholders with actual values.
+        the schema and table placeholders. The timestamp and document types are bound as
+        parameters of the prepared statement.
          */
         log.info("Inserting values into ItemReader SQL statement...");
-        log.info("Checking JobExecutionContext for lastSuccessfulCollection timestamp");
-        JobExecution jobExecution = stepExecution.getJobExecution();
-        ExecutionContext jobContext = jobExecution.getExecutionContext();
-        String timestamp = jobContext.getString("lastSuccessfulCollection");
+        ExecutionContext stepContext = stepExecution.getExecutionContext();
+        String timestamp;
+        if (stepContext.containsKey("partitionLastSuccessfulCollection")) {
+            // partitioned mode: each partition reads one case type (or in backfill mode one time slice)
+            // from its own watermark
+            this.caseType = stepContext.getString("caseType", null);
+            this.sliceEnd = stepContext.getString("sliceEnd", null);
+            log.info("Step is the partition for case type " + this.caseType + " / slice ending " + this.sliceEnd
+                + ", using the partition timestamp");
+            timestamp = stepContext.getString("partitionLastSuccessfulCollection");
+        } else {
+            log.info("Checking JobExecutionContext for lastSuccessfulCollection timestamp");
+            JobExecution jobExecution = stepExecution.getJobExecution();
+            ExecutionContext jobContext = jobExecution.getExecutionContext();
+            timestamp = JobStartFinishListener.startedFrom(jobContext);
+        }
         log.info("Found timestamp: " + timestamp);
         this.lastSuccessfulCollection = timestamp;
 
@@ -74,125 +107,54 @@ public class PostgresItemReader extends JdbcCursorItemReader<DocumentRow> {
         log.info("metadataSchema=" + this.metadataSchema);
         log.info("metadataTable=" + this.metadataTable);
         log.info("lastSuccessfulCollection=" + this.lastSuccessfulCollection);
-        String actualSQL = templateSQL
-            .replace("$schema", this.metadataSchema)
-            .replace("$table", this.metadataTable)
-            .replace("$timestamp", this.lastSuccessfulCollection);
+        String actualSQL = DocumentMetadataQueries.resolve(templateSQL,
+            this.metadataSchema,
+            this.metadataTable);
+        this.queryParameters = DocumentMetadataQueries.parameters(this.lastSuccessfulCollection,
+            this.sliceEnd,
+            this.documentTypes,
+            this.caseType);
 
         setSql(actualSQL);
+        setPreparedStatementSetter(new ArgumentPreparedStatementSetter(this.queryParameters));
+    }
+
+    public void setChunkController(AdaptiveChunkController chunkController) {
+        this.chunkController = chunkController;
+    }
+
+    @Override
+    protected DocumentRow doRead() throws Exception {
+        if (this.chunkController != null && this.rs != null) {
+            // in adaptive mode each round trip fetches the rows of one chunk
+            int chunkSize = this.chunkController.getChunkSize();
+            if (this.rs.getFetchSize() != chunkSize) {
+                this.rs.setFetchSize(chunkSize);
+            }
+        }
+        Timer.Sample sample = Timer.start();
+        DocumentRow document = super.doRead();
+        sample.stop(this.readTimer);
+        if (document != null) {
+            this.rowsRead.increment();
+        }
+        return document;
     }
 
     public String getIngestQuery() {
         /*
         Returns the query for collecting documents to INGEST into the text analytics pipeline
          */
-        String ingestQuery = """
-            WITH all_case_document_types AS (
-                SELECT
-                    uuid::text,
-                    external_reference_uuid::text,
-                    RIGHT(external_reference_uuid::text, 2) as case_type,
-                    type,
-                    pdf_link,
-                    status,
-                    updated_on,
-                    deleted_on
-                FROM
-                    $schema.$table
-                WHERE
-                    status in ('UPLOADED')
-                    AND pdf_link IS NOT NULL
-                    AND deleted_on IS NULL
-                    AND deleted != True
-                    AND updated_on > '$timestamp'::timestamp
-            )
-            SELECT
-                uuid,
-                external_reference_uuid,
-                case_type,
-                type,
-                pdf_link,
-                status,
-                updated_on,
-                deleted_on
-            FROM
-                all_case_document_types
-            WHERE
-                (case_type = 'a1' AND type in ('ORIGINAL', 'CONTRIBUTION'))
-                OR (case_type = 'a2' AND type in ('ORIGINAL', 'CONTRIBUTION'))
-                OR (case_type = 'a3' AND type in ('ORIGINAL', 'CONTRIBUTION'))
-                OR (case_type = 'a4' AND type in ('Original Complaint', 'Contribution Response'))
-                OR (case_type = 'a5' AND type in ('Original Complaint', 'Contribution Response'))
-                OR (case_type = 'b5' AND type in ('Original correspondence', 'Further correspondence from MPs Office', 'Contributions received'))
-                OR (case_type = 'b6' AND type in ('Original correspondence', 'Further correspondence from MPs Office', 'Contributions received'))
-                OR (case_type = 'c1' AND type in ('Claim form', 'Supporting evidence'))
-                OR (case_type = 'c5' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF', 'Appeal Leaflet', 'IMB Letter'))
-                OR (case_type = 'c6' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF', 'Appeal Leaflet', 'IMB Letter'))
-                OR (case_type = 'c7' AND type in ('Original complaint'))
-                OR (case_type = 'c9' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF'))
-                OR (case_type = 'd1' AND type in ('Initial Correspondence', 'Contribution Response'))
-                OR (case_type = 'e1' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF'))
-            ORDER BY updated_on ASC;
-            """;
+        String ingestQuery = DocumentMetadataQueries.ingestSelection() + "ORDER BY updated_on ASC;\n";
         return ingestQuery;
     }
 
     public String getDeleteQuery() {
         /*
         Returns the query for collecting documents to DELETE from the text analytics pipeline.
-
-        This query looks for all newly deleted relevant documents since the last collection of deletes
-        plus a window of 1 week. This additional 1 week is meant to ensure all deletes are fully
-        propagated downstream and deal with the edge case where a delete message is processed by the
-        downstream application before an ingest message is fully processed.
+        See DocumentMetadataQueries.deleteSelection for the 1 week window this includes.
          */
-        String deleteQuery = """
-            WITH all_case_document_types AS (
-                SELECT
-                    uuid::text,
-                    external_reference_uuid::text,
-                    RIGHT(external_reference_uuid::text, 2) as case_type,
-                    type,
-                    pdf_link,
-                    status,
-                    updated_on,
-                    deleted_on
-                FROM
-                    $schema.$table
-                WHERE
-                    status in ('UPLOADED')
-                    AND pdf_link IS NOT NULL
-                    AND deleted = True
-                    AND deleted_on > '$timestamp'::timestamp - interval '1 week'
-            )
-            SELECT
-                uuid,
-                external_reference_uuid,
-                case_type,
-                type,
-                pdf_link,
-                status,
-                updated_on,
-                deleted_on
-            FROM
-                all_case_document_types
-            WHERE
-                (case_type = 'a1' AND type in ('ORIGINAL', 'CONTRIBUTION'))
-                OR (case_type = 'a2' AND type in ('ORIGINAL', 'CONTRIBUTION'))
-                OR (case_type = 'a3' AND type in ('ORIGINAL', 'CONTRIBUTION'))
-                OR (case_type = 'a4' AND type in ('Original Complaint', 'Contribution Response'))
-                OR (case_type = 'a5' AND type in ('Original Complaint', 'Contribution Response'))
-                OR (case_type = 'b5' AND type in ('Original correspondence', 'Further correspondence from MPs Office', 'Contributions received'))
-                OR (case_type = 'b6' AND type in ('Original correspondence', 'Further correspondence from MPs Office', 'Contributions received'))
-                OR (case_type = 'c1' AND type in ('Claim form', 'Supporting evidence'))
-                OR (case_type = 'c5' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF', 'Appeal Leaflet', 'IMB Letter'))
-                OR (case_type = 'c6' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF', 'Appeal Leaflet', 'IMB Letter'))
-                OR (case_type = 'c7' AND type in ('Original complaint'))
-                OR (case_type = 'c9' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF'))
-                OR (case_type = 'd1' AND type in ('Initial Correspondence', 'Contribution Response'))
-                OR (case_type = 'e1' AND type in ('To document', 'Public correspondence', 'Complaint leaflet', 'Complaint letter', 'Email', 'CRF'))
-            ORDER BY updated_on ASC;
-            """;
+        String deleteQuery = DocumentMetadataQueries.deleteSelection() + "ORDER BY updated_on ASC;\n";
         return deleteQuery;
     }
 
@@ -0,0 +1,158 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.database.JdbcPagingItemReader;
+import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.support.PostgresPagingQueryProvider;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRowMapper;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PostgresPagingItemReader extends JdbcPagingItemReader<DocumentRow> {
+    /*
+    A keyset paged alternative to the cursor based PostgresItemReader.
+
+    Rather than holding one cursor (and one transaction) open on the DECS metadata database
+    for the whole job, each page of results is fetched by a separate bounded query which
+    continues from the (updated_on, uuid) key of the last row read. This keeps transactions
+    short so the reader does not pin a snapshot for the duration of a large collection.
+
+    Results are ordered by updated_on (as in the cursor reader) with uuid as a tie-breaker so
+    the keyset is unique. The key of the last row read is saved in the step ExecutionContext
+    so a restarted step continues from that key rather than from the last timestamp.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PostgresPagingItemReader.class);
+    public String lastSuccessfulCollection;
+    public String metadataSchema;
+    public String metadataTable;
+    public int pageSize;
+    public boolean deletes;
+    public String caseType;
+    public String sliceEnd;
+    public Map<String, List<String>> documentTypes;
+    public Object[] queryParameters;
+    protected PostgresPagingQueryProvider pagingQueryProvider;
+    private final Timer readTimer;
+    private final Counter rowsRead;
+
+    public PostgresPagingItemReader(final DataSource dataSource,
+                                    final String metadataSchema,
+                                    final String metadataTable,
+                                    final int pageSize,
+                                    final boolean deletes,
+                                    final String hocsSystem,
+                                    final Map<String, List<String>> documentTypes) {
+        log.info("Constructing PostgresPagingItemReader with pageSize=" + pageSize);
+        this.metadataSchema = metadataSchema;
+        this.metadataTable = metadataTable;
+        this.pageSize = pageSize;
+        this.deletes = deletes;
+        Tags metricTags = PipelineMetrics.collectionTags(hocsSystem, deletes);
+        this.readTimer = PipelineMetrics.readerRead(metricTags);
+        this.rowsRead = PipelineMetrics.rowsRead(metricTags);
+        this.documentTypes = documentTypes;
+
+        setDataSource(dataSource);
+        setPageSize(this.pageSize);
+        setFetchSize(this.pageSize);
+        setName("documentReader");
+        setRowMapper(new DocumentRowMapper(hocsSystem));
+        // The real from clause is only known once the lastSuccessfulCollection timestamp is
+        // available, see setSqlParams. Until then the unresolved template is used.
+        setQueryProvider(createQueryProvider(getSelection()));
+    }
+
+    @BeforeStep
+    public void setSqlParams(StepExecution stepExecution) throws Exception {
+        /*
+        Resolves the placeholders in the selection for the given mode (deletes or ingest)
+        and regenerates the first page and remaining page queries from it. The timestamp and
+        document types are bound as parameters, ahead of the keyset of the remaining pages.
+         */
+        log.info("Inserting values into paging ItemReader SQL statement...");
+        ExecutionContext stepContext = stepExecution.getExecutionContext();
+        String timestamp;
+        if (stepContext.containsKey("partitionLastSuccessfulCollection")) {
+            // partitioned mode: each partition reads one case type (or in backfill mode one time slice)
+            // from its own watermark
+            this.caseType = stepContext.getString("caseType", null);
+            this.sliceEnd = stepContext.getString("sliceEnd", null);
+            log.info("Step is the partition for case type " + this.caseType + " / slice ending " + this.sliceEnd
+                + ", using the partition timestamp");
+            timestamp = stepContext.getString("partitionLastSuccessfulCollection");
+        } else {
+            JobExecution jobExecution = stepExecution.getJobExecution();
+            ExecutionContext jobContext = jobExecution.getExecutionContext();
+            timestamp = JobStartFinishListener.startedFrom(jobContext);
+        }
+        log.info("Found timestamp: " + timestamp);
+        this.lastSuccessfulCollection = timestamp;
+
+        if (this.deletes) {
+            log.info("Application is in DELETE mode. It will page through documents to collect for deletion.");
+        } else {
+            log.info("Application is in INGEST mode. It will page through documents to collect for ingestion.");
+        }
+        String actualSQL = DocumentMetadataQueries.resolve(getSelection(),
+            this.metadataSchema,
+            this.metadataTable);
+        this.queryParameters = DocumentMetadataQueries.parameters(this.lastSuccessfulCollection,
+            this.sliceEnd,
+            this.documentTypes,
+            this.caseType);
+        // positional parameters are bound in the order of their keys
+        Map<String, Object> parameterValues = new LinkedHashMap<>();
+        for (int i = 0; i < this.queryParameters.length; i++) {
+            parameterValues.put(String.valueOf(i), this.queryParameters[i]);
+        }
+
+        setQueryProvider(createQueryProvider(actualSQL));
+        setParameterValues(parameterValues);
+        afterPropertiesSet();  // regenerates the paging queries from the new query provider
+    }
+
+    @Override
+    protected DocumentRow doRead() throws Exception {
+        Timer.Sample sample = Timer.start();
+        DocumentRow document = super.doRead();
+        sample.stop(this.readTimer);
+        if (document != null) {
+            this.rowsRead.increment();
+        }
+        return document;
+    }
+
+    protected String getSelection() {
+        return this.deletes ? DocumentMetadataQueries.deleteSelection() : DocumentMetadataQueries.ingestSelection();
+    }
+
+    protected PostgresPagingQueryProvider createQueryProvider(String selection) {
+        /*
+        Wraps the selection as a derived table so that the keyset predicate and ORDER BY
+        generated by the query provider apply to the filtered document rows.
+         */
+        Map<String, Order> sortKeys = new LinkedHashMap<>();
+        sortKeys.put("updated_on", Order.ASCENDING);
+        sortKeys.put("uuid", Order.ASCENDING);
+
+        PostgresPagingQueryProvider provider = new PostgresPagingQueryProvider();
+        provider.setSelectClause(DocumentMetadataQueries.SELECT_COLUMNS);
+        provider.setFromClause("(" + selection + ") AS document_rows");
+        provider.setSortKeys(sortKeys);
+        this.pagingQueryProvider = provider;
+        return provider;
+    }
+
+}
@@ -0,0 +1,145 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class PublishedDeletesLedger {
+    /*
+    A record of the deletes already acknowledged by the broker, kept on the target bucket next to
+    deletes.json as one file of sorted document uuids per day the documents were deleted on
+    (decs/<system>/deletes-ledger/<yyyy-mm-dd>.txt).
+
+    The delete query selects a 1 week window before the last collection on purpose (see
+    DocumentMetadataQueries.deleteSelection), so without the ledger every delete would be published
+    on every run within that week. With it the TxaKafkaItemWriter skips the deletes recorded here
+    and still publishes any delete in the window which was never acknowledged.
+
+    Only the days of the documents in the window are read. A day which cannot be read is treated as
+    empty, so its deletes are published again rather than missed. It is read again before it is
+    written, so the uuids already on the bucket are never overwritten by only the new ones.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PublishedDeletesLedger.class);
+    private final S3Client s3Client;
+    private final String targetBucket;
+    private final String ledgerPath;
+    private final Map<LocalDate, Set<String>> days = new HashMap<>();
+    private final Set<LocalDate> changedDays = new HashSet<>();
+    private final Set<LocalDate> unreadDays = new HashSet<>();
+
+    PublishedDeletesLedger(S3Client s3Client, String targetBucket, String hocsSystem) {
+        log.info("Constructing PublishedDeletesLedger to record published deletes in: " + targetBucket);
+        this.s3Client = s3Client;
+        this.targetBucket = targetBucket;
+        this.ledgerPath = String.format("decs/%s/deletes-ledger/", hocsSystem.toLowerCase());
+    }
+
+    public synchronized boolean isPublished(DocumentRow doc) {
+        return day(DocumentRow.toLocalDateTime(doc.getDeletedOnMicros()).toLocalDate()).contains(doc.getUuid());
+    }
+
+    public synchronized void recordPublished(Collection<DocumentRow> docs) {
+        /*
+        Only called once the broker has acknowledged the documents.
+         */
+        for (DocumentRow doc : docs) {
+            LocalDate deletedOn = DocumentRow.toLocalDateTime(doc.getDeletedOnMicros()).toLocalDate();
+            if (day(deletedOn).add(doc.getUuid())) {
+                this.changedDays.add(deletedOn);
+            }
+        }
+    }
+
+    public synchronized void commit() {
+        /*
+        Writes the days with newly published deletes to the target bucket. A day which fails to
+        be written is kept to be written by the next commit. Unchanged days are then forgotten,
+        so in daemon mode only the days of the current window stay in memory.
+         */
+        for (LocalDate deletedOn : new TreeSet<>(this.changedDays)) {
+            String key = this.ledgerPath + deletedOn + ".txt";
+            if (this.unreadDays.contains(deletedOn)) {
+                Set<String> existing = load(deletedOn);
+                if (existing == null) {
+                    log.warn("Not committing the published deletes to " + key + " as it cannot be read, it will be retried");
+                    continue;
+                }
+                this.days.get(deletedOn).addAll(existing);
+                this.unreadDays.remove(deletedOn);
+            }
+            String body = String.join("\n", new TreeSet<>(this.days.get(deletedOn)));
+            PutObjectRequest objectRequest = PutObjectRequest.builder()
+                .bucket(this.targetBucket)
+                .key(key)
+                .acl(ObjectCannedACL.BUCKET_OWNER_FULL_CONTROL)
+                .build();
+            try {
+                this.s3Client.putObject(objectRequest, RequestBody.fromString(body, StandardCharsets.UTF_8));
+                this.changedDays.remove(deletedOn);
+                log.info("Committed " + this.days.get(deletedOn).size() + " published deletes to " + key);
+            } catch (SdkException e) {
+                log.warn("Committing the published deletes to " + key + " failed, it will be retried: " + e);
+            }
+        }
+        this.days.keySet().retainAll(this.changedDays);
+        this.unreadDays.retainAll(this.changedDays);
+    }
+
+    private Set<String> day(LocalDate deletedOn) {
+        Set<String> uuids = this.days.get(deletedOn);
+        if (uuids == null) {
+            uuids = load(deletedOn);
+            if (uuids == null) {
+                uuids = new HashSet<>();
+                this.unreadDays.add(deletedOn);
+            }
+            this.days.put(deletedOn, uuids);
+        }
+        return uuids;
+    }
+
+    private Set<String> load(LocalDate deletedOn) {
+        /*
+        The uuids of the day, or null when the day cannot be read.
+         */
+        String key = this.ledgerPath + deletedOn + ".txt";
+        GetObjectRequest objectRequest = GetObjectRequest.builder()
+            .bucket(this.targetBucket)
+            .key(key)
+            .build();
+        Set<String> uuids = new HashSet<>();
+        try {
+            ResponseBytes<GetObjectResponse> object = this.s3Client.getObjectAsBytes(objectRequest);
+            for (String uuid : object.asUtf8String().split("\n")) {
+                if (!uuid.isBlank()) {
+                    uuids.add(uuid);
+                }
+            }
+            log.info("Loaded " + uuids.size() + " published deletes from " + key);
+        } catch (NoSuchKeyException e) {
+            log.info("No deletes have been published for " + deletedOn);
+        } catch (SdkException e) {
+            log.warn("Could not load the published deletes from " + key + ", they will be published again: " + e);
+            return null;
+        }
+        return uuids;
+    }
+}
@@ -34,6 +34,15 @@ public class ReadCountStepExecutionListener implements StepExecutionListener {
         log.info("Writing the readCount to the step execution context");
         ExecutionContext stepContext = stepExecution.getExecutionContext();
         stepContext.putLong("readCount", readCount);
+
+        // Documents already on the target bucket are not copied again (see S3ItemProcessor).
+        // In partitioned mode they are counted by each worker step so they are summed here.
+        long skippedCopyCount = 0;
+        for (StepExecution execution : stepExecution.getJobExecution().getStepExecutions()) {
+            skippedCopyCount += execution.getExecutionContext().getLong("skippedCopyCount", 0L);
+        }
+        log.info("Skipped copying " + skippedCopyCount + " documents already on the target bucket");
+        stepContext.putLong("skippedCopyCount", skippedCopyCount);
         return null;
     }
 
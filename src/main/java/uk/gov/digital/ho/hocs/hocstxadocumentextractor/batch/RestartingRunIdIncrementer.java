@@ -0,0 +1,93 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersIncrementer;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
+
+import java.time.LocalDateTime;
+
+public class RestartingRunIdIncrementer implements JobParametersIncrementer {
+    /*
+    Increments the run.id (as the RunIdIncrementer does) so that each launch is a new job instance,
+    unless the last execution of the job failed or was stopped. Then the last parameters are kept
+    so the launch restarts that job instance and its failed step resumes from the reader position
+    of its last committed chunk, rather than re-reading from the S3 timestamp.
+
+    Only one instance of the application runs at a time, so an execution still marked as running
+    in the JobRepository when the application starts was left by a process which was killed.
+    It is marked as failed first since Spring Batch will not restart an execution it believes
+    is still running.
+
+    Once the job instance has been started startLimit times a new instance is started instead.
+    This is only useful with a durable JobRepository, see spring-batch-db in the application.yml.
+     */
+    private static final Logger log = LoggerFactory.getLogger(RestartingRunIdIncrementer.class);
+    private final RunIdIncrementer runIdIncrementer = new RunIdIncrementer();
+    private final JobExplorer jobExplorer;
+    private final JobRepository jobRepository;
+    private final String jobName;
+    private final int startLimit;
+
+    RestartingRunIdIncrementer(JobExplorer jobExplorer, JobRepository jobRepository, String jobName, int startLimit) {
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+        this.jobName = jobName;
+        this.startLimit = startLimit;
+    }
+
+    @Override
+    public JobParameters getNext(JobParameters parameters) {
+        JobInstance lastInstance = this.jobExplorer.getLastJobInstance(this.jobName);
+        if (lastInstance == null) {
+            return this.runIdIncrementer.getNext(parameters);
+        }
+        JobExecution lastExecution = this.jobExplorer.getLastJobExecution(lastInstance);
+        if (lastExecution == null) {
+            return this.runIdIncrementer.getNext(parameters);
+        }
+
+        if (lastExecution.getStatus().isRunning()) {
+            log.warn("Job execution " + lastExecution.getId() + " was left " + lastExecution.getStatus()
+                + " by a previous process, marking it as FAILED");
+            markFailed(lastExecution);
+        }
+
+        BatchStatus status = lastExecution.getStatus();
+        if (status != BatchStatus.FAILED && status != BatchStatus.STOPPED) {
+            return this.runIdIncrementer.getNext(parameters);
+        }
+        int starts = this.jobExplorer.getJobExecutions(lastInstance).size();
+        if (starts >= this.startLimit) {
+            log.warn("Job instance " + lastInstance.getInstanceId() + " has been started " + starts
+                + " times, starting a new instance instead of restarting it");
+            return this.runIdIncrementer.getNext(parameters);
+        }
+        log.info("Restarting job instance " + lastInstance.getInstanceId() + " whose last execution " + status);
+        return lastExecution.getJobParameters();
+    }
+
+    private void markFailed(JobExecution jobExecution) {
+        LocalDateTime now = LocalDateTime.now();
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            if (stepExecution.getStatus().isRunning()) {
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setExitStatus(ExitStatus.FAILED.addExitDescription("Process was killed"));
+                stepExecution.setEndTime(now);
+                this.jobRepository.update(stepExecution);
+            }
+        }
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.setExitStatus(ExitStatus.FAILED.addExitDescription("Process was killed"));
+        jobExecution.setEndTime(now);
+        this.jobRepository.update(jobExecution);
+    }
+}
@@ -0,0 +1,127 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentJsonWriter;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class S3AsyncItemWriter implements ItemWriter<DocumentRow> {
+    /*
+    An asynchronous alternative to the S3ItemProcessor.
+
+    Rather than copying each document (and uploading its metadata json) one after the other,
+    every document in a chunk is copied concurrently using an S3AsyncClient, with at most
+    maxInFlight documents being transferred at once.
+
+    It runs as the first delegate of a CompositeItemWriter so that a chunk is only published
+    to Kafka once every document in it has been copied. The write only returns when every
+    transfer has completed and any single failure fails the chunk, as with the S3ItemProcessor.
+    As there, the metadata json is only uploaded with writeSidecar set.
+     */
+    private static final Logger log = LoggerFactory.getLogger(S3AsyncItemWriter.class);
+
+    private String sourceBucket;
+    private String targetBucket;
+    private int maxInFlight;
+    private boolean writeSidecar;
+    private S3AsyncClient s3AsyncClient;
+
+    S3AsyncItemWriter(S3AsyncClient s3AsyncClient, String sourceBucket, String targetBucket, int maxInFlight, boolean writeSidecar) {
+        log.info("Constructing S3AsyncItemWriter to transfer objects from: " + sourceBucket + " to: " + targetBucket
+            + " with up to " + maxInFlight + " transfers in flight");
+
+        this.sourceBucket = sourceBucket;
+        this.targetBucket = targetBucket;
+        this.maxInFlight = maxInFlight;
+        this.writeSidecar = writeSidecar;
+        this.s3AsyncClient = s3AsyncClient;
+    }
+
+    @Override
+    public void write(Chunk<? extends DocumentRow> chunk) throws Exception {
+        Semaphore inFlight = new Semaphore(this.maxInFlight);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<CompletableFuture<?>> transfers = new ArrayList<>();
+
+        for (DocumentRow doc : chunk) {
+            inFlight.acquire();
+            if (failed.get()) {
+                // the chunk will fail anyway so don't start any more transfers
+                inFlight.release();
+                break;
+            }
+            log.info("Processing document with externalReferenceUuid " + doc.getExternalReferenceUuid());
+            Timer.Sample sample = Timer.start();
+            CompletableFuture<?> transfer = transferDocument(doc)
+                .whenComplete((response, e) -> {
+                    PipelineMetrics.recordS3Request(sample, "async_transfer", e == null);
+                    if (e != null) {
+                        failed.set(true);
+                    }
+                    inFlight.release();
+                });
+            transfers.add(transfer);
+        }
+
+        try {
+            // allOf only completes once every transfer has completed, successfully or not
+            CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof S3Exception s3Exception) {
+                log.error(s3Exception.awsErrorDetails().errorMessage());
+                throw s3Exception;
+            }
+            log.error(e.toString());
+            throw e;
+        }
+    }
+
+    protected CompletableFuture<?> transferDocument(DocumentRow doc) throws JsonProcessingException {
+        /*
+        Copies the document and then uploads its metadata json, as S3ItemProcessor.process does.
+         */
+        final String sourceKey = doc.getPdfLink();
+        final String destinationKey = doc.getDestinationKey();
+        final String jsonKey = destinationKey + ".json";
+        final byte[] metadataPayload = DocumentJsonWriter.toJson(doc);
+
+        CopyObjectRequest copyReq = CopyObjectRequest.builder()
+            .sourceBucket(this.sourceBucket)
+            .sourceKey(sourceKey)
+            .destinationBucket(this.targetBucket)
+            .destinationKey(destinationKey)
+            .acl(ObjectCannedACL.BUCKET_OWNER_FULL_CONTROL)  // required for owner of target bucket to control the file.
+            .build();
+
+        PutObjectRequest objectRequest = PutObjectRequest.builder()
+            .bucket(this.targetBucket)
+            .key(jsonKey)
+            .acl(ObjectCannedACL.BUCKET_OWNER_FULL_CONTROL)  // required for owner of target bucket to control the file.
+            .build();
+
+        if (!this.writeSidecar) {
+            return this.s3AsyncClient.copyObject(copyReq);
+        }
+        return this.s3AsyncClient.copyObject(copyReq)
+            .thenCompose(copyResponse -> this.s3AsyncClient.putObject(objectRequest, AsyncRequestBody.fromBytes(metadataPayload)));
+    }
+
+}
@@ -0,0 +1,124 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ClassUtils;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+
+@Configuration
+public class S3ClientConfiguration {
+    /*
+    Configuration for the S3 clients used in the Spring Batch job.
+
+    One S3Client (and so one HTTP connection pool) is shared by the S3ItemProcessor, the
+    S3TimestampManagers and the TxaKafkaItemWriter so connections and TLS sessions are reused
+    rather than each of them paying for their own.
+     */
+    private static final Logger log = LoggerFactory.getLogger(S3ClientConfiguration.class);
+
+    private @Value("${s3.endpoint_url}") String endpointURL;
+    private @Value("${s3.source_bucket}") String sourceBucket;
+    private @Value("${s3.target_bucket}") String targetBucket;
+    private @Value("${s3.async.max_in_flight}") Integer maxInFlight;
+    private @Value("${s3.client.max_connections}") Integer maxConnections;
+    private @Value("${s3.client.connection_ttl_ms}") Long connectionTtlMs;
+    private @Value("${s3.client.socket_timeout_ms}") Long socketTimeoutMs;
+    private @Value("${s3.client.connection_acquisition_timeout_ms}") Long connectionAcquisitionTimeoutMs;
+    private @Value("${s3.client.async_http_client}") String asyncHttpClient;
+    private @Value("${s3.client.warm_up_connections}") Integer warmUpConnections;
+
+    @Bean
+    public S3Client s3Client() throws URISyntaxException {
+        /*
+        The shared S3 client with a tuned Apache HTTP client.
+        See https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/http-configuration-apache.html
+         */
+        log.info("Creating shared S3Client with maxConnections=" + maxConnections);
+        ApacheHttpClient.Builder httpClientBuilder = ApacheHttpClient.builder()
+            .maxConnections(maxConnections)
+            .connectionTimeToLive(Duration.ofMillis(connectionTtlMs))
+            .socketTimeout(Duration.ofMillis(socketTimeoutMs))
+            .connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquisitionTimeoutMs));
+
+        return S3Client.builder()
+            .region(Region.EU_WEST_2)
+            .credentialsProvider(DefaultCredentialsProvider.create())
+            .endpointOverride(endpointURI())
+            .httpClientBuilder(httpClientBuilder)
+            .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "s3.async.enabled", havingValue = "true")
+    public S3AsyncClient s3AsyncClient() throws URISyntaxException {
+        /*
+        The S3 client for the async copy mode, with either a Netty or an AWS CRT HTTP client.
+        Its concurrency matches the number of documents the S3AsyncItemWriter copies at once.
+         */
+        log.info("Creating S3AsyncClient with " + asyncHttpClient + " HTTP client");
+        SdkAsyncHttpClient.Builder<?> httpClientBuilder;
+        if (asyncHttpClient.equalsIgnoreCase("crt")) {
+            httpClientBuilder = crtHttpClientBuilder();
+        } else {
+            httpClientBuilder = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxInFlight)
+                .connectionTimeToLive(Duration.ofMillis(connectionTtlMs))
+                .readTimeout(Duration.ofMillis(socketTimeoutMs))
+                .writeTimeout(Duration.ofMillis(socketTimeoutMs))
+                .connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquisitionTimeoutMs));
+        }
+
+        return S3AsyncClient.builder()
+            .region(Region.EU_WEST_2)
+            .credentialsProvider(DefaultCredentialsProvider.create())
+            .endpointOverride(endpointURI())
+            .httpClientBuilder(httpClientBuilder)
+            .build();
+    }
+
+    private SdkAsyncHttpClient.Builder<?> crtHttpClientBuilder() {
+        /*
+        The CRT client is only packaged when the application is built with -PawsCrt (see build.gradle)
+        as it bundles native libraries.
+         */
+        if (!ClassUtils.isPresent("software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient", getClass().getClassLoader())) {
+            throw new IllegalStateException("The crt async_http_client is not packaged with this build, "
+                + "build with -PawsCrt or use the netty async_http_client");
+        }
+        return AwsCrtAsyncHttpClient.builder()
+            .maxConcurrency(maxInFlight)
+            .connectionMaxIdleTime(Duration.ofMillis(connectionTtlMs));
+    }
+
+    @Bean
+    public S3ConnectionWarmUpListener s3ConnectionWarmUpListener(S3Client s3Client) {
+        /*
+        For opening connections to the buckets before the step starts.
+         */
+        return new S3ConnectionWarmUpListener(s3Client, sourceBucket, targetBucket, warmUpConnections);
+    }
+
+    private URI endpointURI() throws URISyntaxException {
+        try {
+            return new URI(endpointURL);
+        } catch (URISyntaxException e){
+            log.error(e.toString());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class S3ConnectionWarmUpListener implements StepExecutionListener {
+    /*
+    Opens connections in the shared S3Client's connection pool before the step starts so
+    the first chunks do not pay for connection setup and TLS handshakes.
+
+    Sends the given number of HeadBucket requests to each bucket at once. Each concurrent
+    request needs its own connection, which is returned to the pool once it completes.
+    Failures only mean connections are opened later, so they are logged and ignored.
+     */
+    private static final Logger log = LoggerFactory.getLogger(S3ConnectionWarmUpListener.class);
+    private final S3Client s3Client;
+    private final String sourceBucket;
+    private final String targetBucket;
+    private final int connections;
+
+    S3ConnectionWarmUpListener(S3Client s3Client, String sourceBucket, String targetBucket, int connections) {
+        this.s3Client = s3Client;
+        this.sourceBucket = sourceBucket;
+        this.targetBucket = targetBucket;
+        this.connections = connections;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        if (this.connections <= 0) {
+            return;
+        }
+        log.info("Warming up " + this.connections + " S3 connections to " + this.sourceBucket + " and " + this.targetBucket);
+        List<String> buckets = List.of(this.sourceBucket, this.targetBucket);
+        ExecutorService executor = Executors.newFixedThreadPool(this.connections * buckets.size());
+        try {
+            List<CompletableFuture<Void>> requests = new ArrayList<>();
+            for (int i = 0; i < this.connections; i++) {
+                for (String bucket : buckets) {
+                    requests.add(CompletableFuture.runAsync(() -> headBucket(bucket), executor));
+                }
+            }
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void headBucket(String bucket) {
+        try {
+            this.s3Client.headBucket(HeadBucketRequest.builder().bucket(bucket).build());
+        } catch (SdkException e) {
+            log.warn("S3 connection warm-up request to " + bucket + " failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        return null;
+    }
+}
@@ -1,24 +1,45 @@
 package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemProcessor;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentJsonWriter;
 import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class S3ItemProcessor implements ItemProcessor<DocumentRow, DocumentRow> {
     /*
@@ -26,40 +47,60 @@ public class S3ItemProcessor implements ItemProcessor<DocumentRow, DocumentRow>
     It copies documents identified by the PostgresItemReader.
     For each document copied, it also creates a json file on the target bucket containing
     the relevant metadata for that document.
+
+    With skipExisting set, documents (and metadata json) which are already on the target bucket
+    from an earlier run are not copied again. See alreadyCopied for how this is decided.
+    The number of documents skipped is counted in the step ExecutionContext as skippedCopyCount.
+
+    With writeSidecar unset the per document metadata json is not uploaded, the metadata is
+    written in manifests by the S3ManifestItemWriter instead.
+
+    With a multipartThreshold set, documents larger than it are copied in parts of partSize bytes
+    with UploadPartCopy, up to partConcurrency parts at once, rather than in a single CopyObject
+    request (which is limited to 5GB objects and copies large documents serially).
      */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;  // S3 minimum for all but the last part
+    private static final int MAX_PARTS = 10000;
     private static final Logger log = LoggerFactory.getLogger(
         uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch.S3ItemProcessor.class);
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private String sourceBucket;
     private String targetBucket;
-    private URI endpointURL;
     private S3Client s3Client;
+    private boolean skipExisting;
+    private boolean writeSidecar;
+    private long multipartThreshold;
+    private long partSize;
+    private ExecutorService partExecutor;
 
-    S3ItemProcessor(String sourceBucket, String targetBucket, String endpointURL) throws URISyntaxException {
-        log.info("Constructing S3ItemProcessor to transfer objects from: " + sourceBucket + " to: " + targetBucket);
+    S3ItemProcessor(S3Client s3Client,
+                    String sourceBucket,
+                    String targetBucket,
+                    boolean skipExisting,
+                    boolean writeSidecar,
+                    long multipartThreshold,
+                    long partSize,
+                    int partConcurrency) {
+        log.info("Constructing S3ItemProcessor to transfer objects from: " + sourceBucket + " to: " + targetBucket
+            + " with skipExisting=" + skipExisting + " and multipartThreshold=" + multipartThreshold);
 
+        if (multipartThreshold > 0 && partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Multipart copy part size must be at least " + MIN_PART_SIZE + " bytes");
+        }
         this.sourceBucket = sourceBucket;
         this.targetBucket = targetBucket;
-        try {
-            this.endpointURL = new URI(endpointURL);
-        } catch (URISyntaxException e){
-            log.error(e.toString());
-            throw e;
+        this.skipExisting = skipExisting;
+        this.writeSidecar = writeSidecar;
+        this.multipartThreshold = multipartThreshold;
+        this.partSize = partSize;
+        if (multipartThreshold > 0) {
+            this.partExecutor = Executors.newFixedThreadPool(partConcurrency);
         }
-
-        DefaultCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
-        Region region = Region.EU_WEST_2;
-        S3Client s3 = S3Client.builder()
-            .region(region)
-            .credentialsProvider(credentialsProvider)
-            .endpointOverride(this.endpointURL)
-            .build();
-        this.s3Client = s3;
+        this.s3Client = s3Client;
     }
 
     @Override
-    public DocumentRow process(final DocumentRow doc) throws S3Exception, JsonProcessingException {
+    public DocumentRow process(final DocumentRow doc) throws S3Exception, JsonProcessingException, InterruptedException {
         final String sourceKey = doc.getPdfLink();
         final String destinationKey = doc.getDestinationKey();
         // don't attempt to replace possible existing .pdf extension to avoid handling cases
@@ -67,16 +108,110 @@ public class S3ItemProcessor implements ItemProcessor<DocumentRow, DocumentRow>
         final String jsonKey = destinationKey + ".json";
         log.info("Processing document with externalReferenceUuid " + doc.getExternalReferenceUuid());
 
+        byte[] metadataPayload = serializeMetadata(doc);
+        if (this.skipExisting && alreadyCopied(sourceKey, destinationKey, metadataPayload, jsonKey)) {
+            log.info("Document " + destinationKey + " is already on the target bucket so the copy is skipped");
+            recordSkippedCopy();
+            return doc;
+        }
+
         log.debug("Copying document");
-        copyBucketObject(this.s3Client, this.sourceBucket, sourceKey, this.targetBucket, destinationKey);
+        copyDocument(sourceKey, destinationKey);
 
-        log.debug("Creating & uploading metadata json");
-        byte[] metadataPayload = this.objectMapper.writeValueAsBytes(doc);
-        putBucketObject(this.s3Client, metadataPayload, jsonKey, this.targetBucket);
+        if (this.writeSidecar) {
+            log.debug("Creating & uploading metadata json");
+            putBucketObject(this.s3Client, metadataPayload, jsonKey, this.targetBucket);
+        }
 
         return doc;
     }
 
+    protected byte[] serializeMetadata(DocumentRow doc) throws JsonProcessingException {
+        // the metadata json uploaded alongside each document (<destinationKey>.json)
+        return DocumentJsonWriter.toJson(doc);
+    }
+
+    protected void copyDocument(String sourceKey, String destinationKey) throws InterruptedException {
+        /*
+        Only documents larger than the multipartThreshold are copied in parts. Finding a document's
+        size costs a HEAD request so this is only done when multipart copies are enabled.
+         */
+        if (this.multipartThreshold > 0) {
+            HeadObjectResponse source = headBucketObject(this.s3Client, this.sourceBucket, sourceKey);
+            if (source != null && source.contentLength() > this.multipartThreshold) {
+                log.info("Document " + sourceKey + " is " + source.contentLength() + " bytes so it is copied in parts");
+                multipartCopyBucketObject(this.s3Client, this.partExecutor, this.sourceBucket, sourceKey,
+                    this.targetBucket, destinationKey, source, this.partSize);
+                return;
+            }
+        }
+        copyBucketObject(this.s3Client, this.sourceBucket, sourceKey, this.targetBucket, destinationKey);
+    }
+
+    protected boolean alreadyCopied(String sourceKey, String destinationKey, byte[] metadataPayload, String jsonKey) {
+        /*
+        A document is already copied when the destination object has the same size and ETag as
+        the source object and the metadata json on the target has the ETag (MD5) of the json that
+        would be uploaded now. This is checked with HEAD requests, which are much cheaper than the
+        copy and put they replace.
+
+        ETags only match for objects copied in one request without KMS encryption, otherwise
+        the document is copied again as before - the check can only avoid work, never skip a copy
+        which is needed.
+         */
+        HeadObjectResponse destination = headBucketObject(this.s3Client, this.targetBucket, destinationKey);
+        if (destination == null) {
+            return false;
+        }
+        HeadObjectResponse source = headBucketObject(this.s3Client, this.sourceBucket, sourceKey);
+        if (source == null
+            || !source.contentLength().equals(destination.contentLength())
+            || !source.eTag().equals(destination.eTag())) {
+            return false;
+        }
+        if (!this.writeSidecar) {
+            return true;
+        }
+        HeadObjectResponse metadata = headBucketObject(this.s3Client, this.targetBucket, jsonKey);
+        return metadata != null && metadata.eTag().equals("\"" + md5Hex(metadataPayload) + "\"");
+    }
+
+    private void recordSkippedCopy() {
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        if (stepContext == null) {
+            return;
+        }
+        ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
+        executionContext.putLong("skippedCopyCount", executionContext.getLong("skippedCopyCount", 0L) + 1);
+    }
+
+    private static String md5Hex(byte[] payload) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(payload));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static HeadObjectResponse headBucketObject (S3Client s3, String bucket, String objectKey) {
+        /*
+        Returns the object's metadata or null if the object does not exist.
+         */
+        HeadObjectRequest headReq = HeadObjectRequest.builder()
+            .bucket(bucket)
+            .key(objectKey)
+            .build();
+
+        try {
+            return s3.headObject(headReq);
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            log.error(e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+    }
+
     public static String copyBucketObject (S3Client s3, String fromBucket, String sourceKey, String toBucket, String destinationKey) {
 
         CopyObjectRequest copyReq = CopyObjectRequest.builder()
@@ -88,15 +223,128 @@ public class S3ItemProcessor implements ItemProcessor<DocumentRow, DocumentRow>
             // see https://docs.aws.amazon.com/AmazonS3/latest/userguide/acl-overview.html#canned-acl
             .build();
 
+        Timer.Sample sample = Timer.start();
+        boolean success = false;
         try {
             CopyObjectResponse copyResponse = s3.copyObject(copyReq);
+            success = true;
             return copyResponse.copyObjectResult().toString();
 
         } catch (S3Exception e) {
             log.error(e.awsErrorDetails().errorMessage());
             throw e;
+        } finally {
+            PipelineMetrics.recordS3Request(sample, "copy", success);
+        }
+
+    }
+
+    public static String multipartCopyBucketObject (S3Client s3,
+                                                    ExecutorService partExecutor,
+                                                    String fromBucket,
+                                                    String sourceKey,
+                                                    String toBucket,
+                                                    String destinationKey,
+                                                    HeadObjectResponse source,
+                                                    long partSize) throws InterruptedException {
+        /*
+        Copies the object as a multipart upload of byte ranges of the source, submitting each
+        UploadPartCopy to the partExecutor. The part size is increased if needed to stay within
+        the S3 limit on the number of parts. If anything fails before the upload is completed it
+        is aborted so that no incomplete parts are left (and charged for) on the target bucket.
+
+        CopyObject copies the content headers and user metadata of the source, a multipart
+        upload does not, so they are taken from the source's HEAD response to match.
+         */
+        final long objectSize = source.contentLength();
+        final long actualPartSize = Math.max(partSize, (objectSize + MAX_PARTS - 1) / MAX_PARTS);
+
+        CreateMultipartUploadRequest createReq = CreateMultipartUploadRequest.builder()
+            .bucket(toBucket)
+            .key(destinationKey)
+            .acl(ObjectCannedACL.BUCKET_OWNER_FULL_CONTROL)  // required for owner of target bucket to control the file.
+            .contentType(source.contentType())
+            .contentEncoding(source.contentEncoding())
+            .contentDisposition(source.contentDisposition())
+            .contentLanguage(source.contentLanguage())
+            .cacheControl(source.cacheControl())
+            .expires(source.expires())
+            .metadata(source.metadata())
+            .build();
+        Timer.Sample sample = Timer.start();
+        boolean success = false;
+        final String uploadId = s3.createMultipartUpload(createReq).uploadId();
+
+        List<Future<CompletedPart>> partFutures = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            for (long start = 0; start < objectSize; start += actualPartSize, partNumber++) {
+                final long end = Math.min(start + actualPartSize, objectSize) - 1;
+                final int number = partNumber;
+                UploadPartCopyRequest partReq = UploadPartCopyRequest.builder()
+                    .sourceBucket(fromBucket)
+                    .sourceKey(sourceKey)
+                    .destinationBucket(toBucket)
+                    .destinationKey(destinationKey)
+                    .uploadId(uploadId)
+                    .partNumber(number)
+                    .copySourceRange("bytes=" + start + "-" + end)
+                    .build();
+                partFutures.add(partExecutor.submit(() -> CompletedPart.builder()
+                    .partNumber(number)
+                    .eTag(s3.uploadPartCopy(partReq).copyPartResult().eTag())
+                    .build()));
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>();
+            for (Future<CompletedPart> partFuture : partFutures) {
+                completedParts.add(partFuture.get());
+            }
+
+            CompleteMultipartUploadRequest completeReq = CompleteMultipartUploadRequest.builder()
+                .bucket(toBucket)
+                .key(destinationKey)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build();
+            CompleteMultipartUploadResponse completeResponse = s3.completeMultipartUpload(completeReq);
+            success = true;
+            PipelineMetrics.recordS3Bytes("multipart_copy", objectSize);
+            return completeResponse.toString();
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof S3Exception s3Exception) {
+                log.error(s3Exception.awsErrorDetails().errorMessage());
+                throw s3Exception;
+            }
+            log.error(e.getCause().toString());
+            throw new IllegalStateException("Multipart copy of " + sourceKey + " failed", e.getCause());
+        } catch (InterruptedException | SdkException e) {
+            log.error(e.toString());
+            throw e;
+        } finally {
+            if (!success) {
+                abortMultipartCopy(s3, partFutures, toBucket, destinationKey, uploadId);
+            }
+            PipelineMetrics.recordS3Request(sample, "multipart_copy", success);
         }
+    }
 
+    private static void abortMultipartCopy(S3Client s3, List<Future<CompletedPart>> partFutures, String toBucket, String destinationKey, String uploadId) {
+        /*
+        A failed abort is logged rather than thrown so the copy fails with the original error.
+         */
+        partFutures.forEach(partFuture -> partFuture.cancel(true));
+        AbortMultipartUploadRequest abortReq = AbortMultipartUploadRequest.builder()
+            .bucket(toBucket)
+            .key(destinationKey)
+            .uploadId(uploadId)
+            .build();
+        try {
+            s3.abortMultipartUpload(abortReq);
+        } catch (SdkException e) {
+            log.error("Aborting the multipart upload " + uploadId + " of " + destinationKey + " failed: " + e);
+        }
     }
 
     public static String putBucketObject (S3Client s3, byte[] requestBody, String objectKey, String toBucket) {
@@ -108,8 +356,23 @@ public class S3ItemProcessor implements ItemProcessor<DocumentRow, DocumentRow>
             // see https://docs.aws.amazon.com/AmazonS3/latest/userguide/acl-overview.html#canned-acl
             .build();
 
-        PutObjectResponse putResponse = s3.putObject(objectRequest, RequestBody.fromBytes(requestBody));
-        return putResponse.toString();
+        Timer.Sample sample = Timer.start();
+        boolean success = false;
+        try {
+            PutObjectResponse putResponse = s3.putObject(objectRequest, RequestBody.fromBytes(requestBody));
+            success = true;
+            PipelineMetrics.recordS3Bytes("put", requestBody.length);
+            return putResponse.toString();
+        } finally {
+            PipelineMetrics.recordS3Request(sample, "put", success);
+        }
+    }
+
+    @PreDestroy
+    public void shutdownPartExecutor() {
+        if (this.partExecutor != null) {
+            this.partExecutor.shutdownNow();
+        }
     }
 
 }
@@ -0,0 +1,100 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import software.amazon.awssdk.services.s3.S3Client;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentJsonWriter;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+public class S3ManifestItemWriter implements ItemWriter<DocumentRow> {
+    /*
+    Writes the metadata of every document in a chunk to the target bucket as NDJSON manifests
+    (one json document per line, as would otherwise be written to each <destinationKey>.json)
+    so a chunk costs one or a few PUTs rather than one per document.
+
+    Manifests are grouped either per chunk (decs/<system>/manifests/) or per day partition
+    (decs/<system>/year=YYYY/month=MM/day=DD/manifests/), in which case a chunk spanning
+    several days writes one manifest per day. A manifest is named after its first document
+    so that re-running a chunk overwrites its manifests rather than duplicating them.
+
+    It runs in a CompositeItemWriter after the documents are copied and before they are
+    published to Kafka.
+     */
+    private static final Logger log = LoggerFactory.getLogger(S3ManifestItemWriter.class);
+    private static final int DAY_PARTITION_DEPTH = 5;  // decs/<system>/year=/month=/day=
+
+    private final S3Client s3Client;
+    private final String targetBucket;
+    private final String hocsSystem;
+    private final boolean perDay;
+    private final boolean gzip;
+
+    S3ManifestItemWriter(S3Client s3Client, String targetBucket, String hocsSystem, boolean perDay, boolean gzip) {
+        log.info("Constructing S3ManifestItemWriter to write manifests to: " + targetBucket
+            + " per " + (perDay ? "day" : "chunk") + " with gzip=" + gzip);
+        this.s3Client = s3Client;
+        this.targetBucket = targetBucket;
+        this.hocsSystem = hocsSystem;
+        this.perDay = perDay;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(Chunk<? extends DocumentRow> chunk) throws IOException {
+        for (Map.Entry<String, List<DocumentRow>> manifest : groupByManifestPrefix(chunk).entrySet()) {
+            List<DocumentRow> docs = manifest.getValue();
+            DocumentRow first = docs.get(0);
+            String manifestKey = manifest.getKey() + "manifests/manifest-"
+                + DocumentRow.toLocalDateTime(first.getUpdatedOnMicros()).toString().replace(':', '-') + "-" + first.getUuid()
+                + (this.gzip ? ".ndjson.gz" : ".ndjson");
+
+            log.info("Uploading manifest of " + docs.size() + " documents to " + manifestKey);
+            S3ItemProcessor.putBucketObject(this.s3Client, encode(docs), manifestKey, this.targetBucket);
+        }
+    }
+
+    protected Map<String, List<DocumentRow>> groupByManifestPrefix(Chunk<? extends DocumentRow> chunk) {
+        Map<String, List<DocumentRow>> manifests = new LinkedHashMap<>();
+        for (DocumentRow doc : chunk) {
+            String prefix = this.perDay ? dayPartition(doc.getDestinationKey()) : manifestRoot();
+            manifests.computeIfAbsent(prefix, p -> new ArrayList<>()).add(doc);
+        }
+        return manifests;
+    }
+
+    private String manifestRoot() {
+        // the same root as the destinationKeys, see DocumentRowMapper.computeDestinationKey
+        return "decs/" + this.hocsSystem + "/";
+    }
+
+    private static String dayPartition(String destinationKey) {
+        // e.g. decs/cs/year=2023/month=07/day=28/externalReferenceUuid/uuid.pdf => decs/cs/year=2023/month=07/day=28/
+        int end = -1;
+        for (int i = 0; i < DAY_PARTITION_DEPTH; i++) {
+            end = destinationKey.indexOf('/', end + 1);
+        }
+        return destinationKey.substring(0, end + 1);
+    }
+
+    protected byte[] encode(List<DocumentRow> docs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = this.gzip ? new GZIPOutputStream(bytes) : bytes) {
+            for (DocumentRow doc : docs) {
+                DocumentJsonWriter.writeJson(doc, out);
+                out.write('\n');
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
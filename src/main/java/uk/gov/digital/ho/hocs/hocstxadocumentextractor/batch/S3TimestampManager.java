@@ -4,10 +4,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
@@ -16,8 +14,6 @@ import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,42 +26,29 @@ public class S3TimestampManager {
         S3TimestampManager.class);
 
     protected String targetBucket;
-    protected URI endpointURL;
     protected String lastCollection;
     protected boolean deletes;
     protected String metadataPath;
     protected S3Client s3Client;
     protected Map<String, String> metadataJson;
 
-    S3TimestampManager(String targetBucket,
-                       String endpointURL,
+    S3TimestampManager(S3Client s3Client,
+                       String targetBucket,
                        String lastCollection,
                        boolean deletes,
-                       String hocsSystem) throws URISyntaxException {
+                       String hocsSystem) {
+        /*
+        Uses the S3Client shared with the rest of the job (see S3ClientConfiguration).
+         */
         log.info("Constructing S3TimestampManager to manage timestamps in: " + targetBucket);
-        log.info("S3 endpoint: " + endpointURL);
 
         this.targetBucket = targetBucket;
-        try {
-            this.endpointURL = new URI(endpointURL);
-        } catch (URISyntaxException e){
-            log.error(e.toString());
-            throw e;
-        }
         this.lastCollection = lastCollection;
         this.deletes = deletes;
         String metadataFile = deletes ? "deletes.json" : "ingests.json";
         // delete and ingest timestamps for cs and wcs are all tracked independently
         this.metadataPath = String.format("decs/%s/%s", hocsSystem.toLowerCase(), metadataFile);
-
-        DefaultCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
-        Region region = Region.EU_WEST_2;
-        S3Client s3 = S3Client.builder()
-            .region(region)
-            .credentialsProvider(credentialsProvider)
-            .endpointOverride(this.endpointURL)
-            .build();
-        this.s3Client = s3;
+        this.s3Client = s3Client;
     }
 
     public String getTimestamp() throws IOException {
@@ -97,9 +80,38 @@ public class S3TimestampManager {
         return result;
     }
 
+    public Map<String, String> getPartitionTimestamps() {
+        /*
+        Returns the per-partition timestamps (lastSuccessfulCollection.<caseType>) loaded by the
+        last call to getTimestamp. When the timestamp is overridden by the lastCollection value
+        no partition timestamps are returned so that every partition starts from the override.
+         */
+        Map<String, String> partitionTimestamps = new HashMap<>();
+        if (this.metadataJson == null || !this.lastCollection.isEmpty()) {
+            return partitionTimestamps;
+        }
+        for (Map.Entry<String, String> entry : this.metadataJson.entrySet()) {
+            if (entry.getKey().startsWith(CaseTypePartitioner.PARTITION_TIMESTAMP_PREFIX)) {
+                partitionTimestamps.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return partitionTimestamps;
+    }
+
     public boolean putTimestamp(String checkpointTimestamp) throws JsonProcessingException {
+        Map<String, String> checkpoints = new HashMap<>();
+        checkpoints.put("lastSuccessfulCollection", checkpointTimestamp);
+        return putTimestamps(checkpoints);
+    }
+
+    public boolean putTimestamps(Map<String, String> checkpoints) throws JsonProcessingException {
+        /*
+        Updates each of the given keys (the job timestamp and/or partition timestamps) in the
+        record on the target bucket, keeping any other keys already in the record except the
+        backfill slices the job timestamp has passed.
+         */
         log.info("Attempting to put the updated last successful collection timestamp...");
-        log.info("Updating to: " + checkpointTimestamp);
+        log.info("Updating to: " + checkpoints);
 
         PutObjectRequest objectRequest = PutObjectRequest.builder()
             .bucket(this.targetBucket)
@@ -107,7 +119,8 @@ public class S3TimestampManager {
             .acl(ObjectCannedACL.BUCKET_OWNER_FULL_CONTROL)  // required for owner of target bucket to control the file.
             .build();
 
-        this.metadataJson.put("lastSuccessfulCollection", checkpointTimestamp);
+        this.metadataJson.putAll(checkpoints);
+        TimeSlicePartitioner.removePassedSlices(this.metadataJson);
 
         byte[] requestBody = writeJsonBytes(this.metadataJson);
 
@@ -0,0 +1,74 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SystemCollections {
+    /*
+    Multi-system mode: the collections of each HOCS system (e.g. CS and WCS) run by the one
+    documentExtractionJob, each from its own metadata database and schema/table and with its
+    own timestamps under decs/<system>/ on the target bucket.
+
+    The writers of the systems are not Spring beans, so their timestamps are committed here when
+    the application shuts down (see TxaKafkaItemWriter.commitTimestamp), and the systems'
+    connection pools are closed after that.
+     */
+    private static final Logger log = LoggerFactory.getLogger(SystemCollections.class);
+    private final List<SystemCollection> systems = new ArrayList<>();
+
+    record SystemCollection(String hocsSystem,
+                            HikariDataSource metadataSource,
+                            String metadataSchema,
+                            String metadataTable,
+                            TxaKafkaItemWriter ingestWriter,
+                            TxaKafkaItemWriter deleteWriter) {
+        /*
+        A writer is null when the system is not collected for that mode.
+         */
+    }
+
+    void add(SystemCollection system) {
+        log.info("Adding collection of " + system.hocsSystem() + " from "
+            + system.metadataSchema() + "." + system.metadataTable());
+        this.systems.add(system);
+    }
+
+    public List<SystemCollection> getSystems() {
+        return this.systems;
+    }
+
+    public List<TxaKafkaItemWriter> getWriters() {
+        List<TxaKafkaItemWriter> writers = new ArrayList<>();
+        for (SystemCollection system : this.systems) {
+            if (system.ingestWriter() != null) {
+                writers.add(system.ingestWriter());
+            }
+            if (system.deleteWriter() != null) {
+                writers.add(system.deleteWriter());
+            }
+        }
+        return writers;
+    }
+
+    @PreDestroy
+    public void commitTimestamps() {
+        /*
+        A failure to commit one system's timestamp does not stop the others being committed.
+         */
+        for (TxaKafkaItemWriter writer : getWriters()) {
+            try {
+                writer.commitTimestamp();
+            } catch (RuntimeException e) {
+                log.error("Committing a timestamp failed: " + e);
+            }
+        }
+        for (SystemCollection system : this.systems) {
+            system.metadataSource().close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TimeSlicePartitioner implements Partitioner {
+    /*
+    Backfill mode: replays the documents updated (deleted in delete mode) in the range (from, to]
+    by cutting it into slices of sliceDuration, each read, copied and published by its own worker
+    step in parallel. The range is exclusive of from, as the lastSuccessfulCollection timestamp is.
+
+    Every slice has its own progress record (lastSuccessfulCollection.backfill.<slice start>) so a
+    backfill which is run again continues each slice from where it got to. The job's
+    lastSuccessfulCollection only moves to the end of the slices completed without a gap from the
+    start of the range, see collectCheckpoints, and never moves backwards. It only moves at all when
+    the range starts at or before it, otherwise the documents between the two would be skipped.
+
+    Once the job's lastSuccessfulCollection has passed a slice, its progress record is removed from
+    the record on the target bucket, see removePassedSlices, so the records do not build up.
+
+    As for the CaseTypePartitioner the gridSize only bounds how many slices run at once.
+     */
+    private static final Logger log = LoggerFactory.getLogger(TimeSlicePartitioner.class);
+    public static final String SLICE_TIMESTAMP_PREFIX = CaseTypePartitioner.PARTITION_TIMESTAMP_PREFIX + "backfill.";
+    private static final DateTimeFormatter SLICE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final String from;
+    private final String to;
+    private final Duration sliceDuration;
+    private ExecutionContext jobContext;
+
+    TimeSlicePartitioner(String from, String to, Duration sliceDuration) {
+        this.from = from;
+        this.to = to;
+        this.sliceDuration = sliceDuration;
+    }
+
+    @BeforeStep
+    public void saveJobContext(StepExecution stepExecution) {
+        /*
+        Makes the job ExecutionContext (where the progress records are loaded to) available
+        to the partition method.
+         */
+        this.jobContext = stepExecution.getJobExecution().getExecutionContext();
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        LocalDateTime end = Timestamp.valueOf(this.to).toLocalDateTime();
+        LocalDateTime sliceStart = Timestamp.valueOf(this.from).toLocalDateTime();
+        if (!sliceStart.isBefore(end) || this.sliceDuration.isZero() || this.sliceDuration.isNegative()) {
+            throw new IllegalArgumentException("Invalid backfill range (" + this.from + ", " + this.to + "] in slices of " + this.sliceDuration);
+        }
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        while (sliceStart.isBefore(end)) {
+            LocalDateTime sliceEnd = sliceStart.plus(this.sliceDuration);
+            if (sliceEnd.isAfter(end)) {
+                sliceEnd = end;
+            }
+            String start = sliceStart.format(SLICE_FORMAT);
+            String timestamp = this.jobContext.getString(SLICE_TIMESTAMP_PREFIX + start, start);
+            log.info("Creating backfill slice (" + start + ", " + sliceEnd.format(SLICE_FORMAT) + "] from timestamp=" + timestamp);
+
+            ExecutionContext partitionContext = new ExecutionContext();
+            partitionContext.putString("sliceStart", start);
+            partitionContext.putString("sliceEnd", sliceEnd.format(SLICE_FORMAT));
+            partitionContext.putString("partitionLastSuccessfulCollection", timestamp);
+            partitions.put("slice-" + start, partitionContext);
+            sliceStart = sliceEnd;
+        }
+        return partitions;
+    }
+
+    static Map<String, String> collectCheckpoints(List<StepExecution> slices, String jobTimestamp) {
+        /*
+        The progress of each slice, and the job lastSuccessfulCollection: the end of the last slice
+        completed without a gap from the start of the range, when that is after the job timestamp
+        and the range starts at or before the job timestamp (so no documents are skipped between them).
+        A slice which has not completed is recorded at the last timestamp it published.
+         */
+        Map<String, String> checkpoints = new HashMap<>();
+        List<StepExecution> ordered = new ArrayList<>(slices);
+        ordered.sort(Comparator.comparing(execution -> execution.getExecutionContext().getString("sliceStart")));
+        String completedUntil = null;
+        boolean gap = false;
+        for (StepExecution execution : ordered) {
+            ExecutionContext context = execution.getExecutionContext();
+            String key = SLICE_TIMESTAMP_PREFIX + context.getString("sliceStart");
+            if (execution.getStatus() == BatchStatus.COMPLETED) {
+                checkpoints.put(key, context.getString("sliceEnd"));
+                if (!gap) {
+                    completedUntil = context.getString("sliceEnd");
+                }
+                continue;
+            }
+            gap = true;
+            if (context.containsKey("lastSuccessfulCollection")) {
+                checkpoints.put(key, context.getString("lastSuccessfulCollection"));
+            }
+        }
+        String rangeStart = ordered.isEmpty() ? null : ordered.get(0).getExecutionContext().getString("sliceStart");
+        if (completedUntil != null
+                && (jobTimestamp == null
+                    || (Timestamp.valueOf(completedUntil).after(Timestamp.valueOf(jobTimestamp))
+                        && !Timestamp.valueOf(rangeStart).after(Timestamp.valueOf(jobTimestamp))))) {
+            checkpoints.put("lastSuccessfulCollection", completedUntil);
+        } else if (!checkpoints.isEmpty() && jobTimestamp != null) {
+            // the job timestamp is committed unchanged with the progress of the slices
+            checkpoints.put("lastSuccessfulCollection", jobTimestamp);
+        }
+        return checkpoints;
+    }
+
+    static void removePassedSlices(Map<String, String> record) {
+        /*
+        Removes the progress records of the slices the job lastSuccessfulCollection has reached.
+        A completed slice is recorded at its end, so its record goes once the job timestamp has
+        passed the end of the slice. A slice which did not complete is recorded at the last timestamp
+        it published and goes once the job timestamp has passed that, if its backfill is run again
+        it is replayed from the start of the slice.
+         */
+        String jobTimestamp = record.get("lastSuccessfulCollection");
+        if (jobTimestamp == null) {
+            return;
+        }
+        Timestamp watermark = Timestamp.valueOf(jobTimestamp);
+        record.entrySet().removeIf(entry -> entry.getKey().startsWith(SLICE_TIMESTAMP_PREFIX)
+            && !Timestamp.valueOf(entry.getValue()).after(watermark));
+    }
+}
@@ -1,19 +1,34 @@
 package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
 import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.kafka.KafkaItemWriter;
 import org.springframework.kafka.core.KafkaTemplate;
+import software.amazon.awssdk.services.s3.S3Client;
 import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 
 public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
     /*
@@ -23,24 +38,53 @@ public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
     Also responsible for attempting to commit timestamp of the last successfully
     processed document to the target S3. See the @PreDestroy commitTimestamp method
     for more detail.
+
+    With maxPendingChunks > 0 the writer is pipelined: a chunk's sends are left in flight
+    while the next chunks are read and processed, and the write only blocks once more than
+    maxPendingChunks chunks are unacknowledged. Pending chunks are acknowledged oldest first
+    so the lastSuccessfulCollection checkpoint only ever advances to the last timestamp
+    of a chunk for which it and every earlier chunk have been acknowledged. The reader position
+    saved with each chunk's transaction does not wait for the acknowledgement though, so pipelined
+    mode cannot be used with job restarts (see BatchConfiguration.mainStep).
+
+    In delete mode with a PublishedDeletesLedger, deletes already acknowledged by an earlier run
+    are not published again, see PublishedDeletesLedger.
      */
     private static final Logger log = LoggerFactory.getLogger(
         TxaKafkaItemWriter.class);
     private StepExecution stepExecution;
     private final String targetBucket;
-    private final String endpointURL;
+    private final S3Client s3Client;
     private final Map<String, String> slackURLMap;
     private final boolean deletes;
     private final String hocsSystem;
+    private final Tags metricTags;
+    private final Counter deletesSkipped;
     private final KafkaTemplate kafkaTemplate;
+    private final int maxPendingChunks;
+    private final Map<Long, Deque<PendingChunk>> pendingChunks = new ConcurrentHashMap<>();
+    private Map<String, String> lastCommitted = Map.of();
+    private PublishedDeletesLedger ledger;
+
+    record PendingChunk(List<CompletableFuture<?>> sendFutures, List<DocumentRow> documents, String checkpointTimestamp) {
+        /*
+        The sends of a chunk which has been written but not yet acknowledged by the broker.
+         */
+        boolean isDone() {
+            return sendFutures.stream().allMatch(CompletableFuture::isDone);
+        }
+    }
 
-    TxaKafkaItemWriter(String targetBucket, String endpointURL, Map<String, String> slackURLMap, boolean deletes, String hocsSystem, KafkaTemplate kafkaTemplate) throws Exception {
+    TxaKafkaItemWriter(S3Client s3Client, String targetBucket, Map<String, String> slackURLMap, boolean deletes, String hocsSystem, KafkaTemplate kafkaTemplate, int maxPendingChunks) throws Exception {
+        this.s3Client = s3Client;
         this.targetBucket = targetBucket;
-        this.endpointURL = endpointURL;
         this.slackURLMap = slackURLMap;
         this.deletes = deletes;
         this.hocsSystem = hocsSystem;
+        this.metricTags = PipelineMetrics.collectionTags(hocsSystem, deletes);
+        this.deletesSkipped = PipelineMetrics.deletesSkipped(this.metricTags);
         this.kafkaTemplate = kafkaTemplate;
+        this.maxPendingChunks = maxPendingChunks;
         setKafkaTemplate(kafkaTemplate);
         setItemKeyMapper(DocumentRow::getExternalReferenceUuid);
         setDelete(false); // not related to the HocsTxaDocumentExtractor delete functionality
@@ -48,6 +92,14 @@ public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
         afterPropertiesSet();
     }
 
+    public void setLedger(PublishedDeletesLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    public PublishedDeletesLedger getLedger() {
+        return this.ledger;
+    }
+
     @Override
     public void write(Chunk<? extends DocumentRow> doc_list) throws Exception {
         if (doc_list == null) {
@@ -55,29 +107,129 @@ public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
         }
         String docTimestamp = null;
         String checkpointTimestamp = null;
+        /*
+        The futures are tracked per call rather than with writeKeyValue, whose list of futures is
+        shared by the whole writer, so that partitions running on other threads can use this writer
+        concurrently without waiting on (or clearing) each other's sends.
+         */
+        List<CompletableFuture<?>> sendFutures = new ArrayList<>();
+        List<DocumentRow> documents = new ArrayList<>();
         for (DocumentRow doc : doc_list) {
-            docTimestamp = this.deletes ? doc.getDeletedOn().toString() : doc.getUpdatedOn().toString();
+            docTimestamp = DocumentRow.timestampString(this.deletes ? doc.getDeletedOnMicros() : doc.getUpdatedOnMicros());
+            checkpointTimestamp = docTimestamp;
+            if (this.ledger != null && this.ledger.isPublished(doc)) {
+                // published by an earlier run, the checkpoint still moves past it
+                this.deletesSkipped.increment();
+                continue;
+            }
             log.info("Publishing event for document " + doc.getExternalReferenceUuid() + " with timestamp=" + docTimestamp);
             String key = itemKeyMapper.convert(doc);
-            writeKeyValue(key, doc);
+            Timer.Sample sample = Timer.start();
+            CompletableFuture<?> sendFuture = this.kafkaTemplate.sendDefault(key, doc);
+            sendFuture.whenComplete((result, e) -> PipelineMetrics.recordKafkaAck(sample, this.metricTags, e == null));
+            sendFutures.add(sendFuture);
+            documents.add(doc);
+        }
 
-            checkpointTimestamp = docTimestamp;
+        StepExecution stepExecution = currentStepExecution();
+        if (this.maxPendingChunks > 0) {
+            /*
+            Leave this chunk's sends in flight and only wait for the oldest chunks once there
+            are too many unacknowledged. A failed send fails the write that finds it.
+             */
+            Deque<PendingChunk> pending = this.pendingChunks.computeIfAbsent(stepExecution.getId(),
+                id -> new ConcurrentLinkedDeque<>());
+            pending.addLast(new PendingChunk(sendFutures, documents, checkpointTimestamp));
+            acknowledgePendingChunks(stepExecution, pending, this.maxPendingChunks);
+            return;
         }
         /*
         Only update the checkpointTimestamp in memory if writing to Kafka is definitely successful.
         Updating the checkpointTimestamp is the application committing the progress of the job.
 
-        flush() should throw an exception if there is an error with the delivery of a
-        message. flush() calls flush on the underlying producer before checking all
-        completableFutures to confirm the broker received the messages.
+        Flushing the producer and then checking every future should throw an exception if there
+        is an error with the delivery of a message, confirming the broker received the messages.
          */
         flush();
+        for (CompletableFuture<?> sendFuture : sendFutures) {
+            sendFuture.get(this.timeout, TimeUnit.MILLISECONDS);
+        }
+        recordPublished(documents);
 
         log.info("Updating checkpointTimestamp in StepContext with " + checkpointTimestamp);
-        ExecutionContext stepContext = this.stepExecution.getExecutionContext();
+        ExecutionContext stepContext = stepExecution.getExecutionContext();
         stepContext.putString("lastSuccessfulCollection", checkpointTimestamp);
     }
 
+    void acknowledgePendingChunks(StepExecution stepExecution, Deque<PendingChunk> pending, int maxPending) throws Exception {
+        /*
+        Removes acknowledged chunks from the head of the queue, waiting for the oldest chunk
+        while more than maxPending chunks remain, and advances the checkpointTimestamp to the
+        last chunk removed. Chunks are never removed out of order so the checkpoint never passes
+        a chunk which is still in flight or has failed.
+         */
+        while (!pending.isEmpty()) {
+            PendingChunk oldest = pending.peekFirst();
+            if (pending.size() <= maxPending && !oldest.isDone()) {
+                break;
+            }
+            for (CompletableFuture<?> sendFuture : oldest.sendFutures()) {
+                sendFuture.get(this.timeout, TimeUnit.MILLISECONDS);
+            }
+            pending.removeFirst();
+            recordPublished(oldest.documents());
+
+            log.info("Updating checkpointTimestamp in StepContext with " + oldest.checkpointTimestamp());
+            stepExecution.getExecutionContext().putString("lastSuccessfulCollection", oldest.checkpointTimestamp());
+        }
+    }
+
+    @AfterStep
+    public ExitStatus drainPendingChunks(StepExecution stepExecution) {
+        /*
+        Waits for the sends still in flight at the end of the step (pipelined mode only).
+        This runs before the PromotionListener so the final checkpointTimestamp is promoted.
+        If any of them fail the step is failed, the checkpoint stays at the last acknowledged chunk.
+         */
+        Deque<PendingChunk> pending = this.pendingChunks.remove(stepExecution.getId());
+        if (pending == null || pending.isEmpty()) {
+            return null;
+        }
+        log.info("Waiting for " + pending.size() + " pending chunks to be acknowledged...");
+        try {
+            flush();
+            acknowledgePendingChunks(stepExecution, pending, 0);
+        } catch (Exception e) {
+            log.error("Publishing a pending chunk failed: " + e);
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(e);
+            return ExitStatus.FAILED;
+        }
+        return null;
+    }
+
+    private void recordPublished(List<DocumentRow> documents) {
+        if (this.ledger != null) {
+            this.ledger.recordPublished(documents);
+        }
+    }
+
+    private void flush() {
+        PipelineMetrics.KAFKA_FLUSH.record(() -> this.kafkaTemplate.flush());
+    }
+
+    protected StepExecution currentStepExecution() {
+        /*
+        The step execution running on this thread. In partitioned mode this is the partition's
+        worker step so that each partition records its own progress.
+         */
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        if (stepContext == null) {
+            return this.stepExecution;
+        }
+        return stepContext.getStepExecution();
+    }
+
     @BeforeStep
     public void saveStepExecution(StepExecution stepExecution) {
         /*
@@ -88,7 +240,7 @@ public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
     }
 
     @PreDestroy
-    public void commitTimestamp() {
+    public synchronized void commitTimestamp() {
         /*
         The purpose of this method is to commit the timestamp of the last successful document sent
         to the text analytics pipeline. This is defined here (instead of the JobStartFinishListener)
@@ -103,29 +255,49 @@ public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
 
         This method creates new class instances (rather than using Beans created by Spring) because
         pre-existing beans will already be destroyed before this class can utilise them.
+        The shared S3Client is the exception: it is a dependency of this bean so Spring only
+        destroys it after this method has run.
+
+        In daemon mode it is also called by the JobScheduler after every run.
          */
-        String lastCheckpointTimestamp = this.stepExecution.getExecutionContext().getString("lastSuccessfulCollection", "empty");
-        if (lastCheckpointTimestamp == "empty") {
+        if (this.stepExecution == null) {
+            log.info("No step has started so committing the timestamp is skipped.");
+            return;
+        }
+        acknowledgeCompletedChunks();
+        if (this.ledger != null) {
+            // before the timestamp, so a delete is never behind the checkpoint without being in the ledger
+            this.ledger.commit();
+        }
+        Map<String, String> checkpoints = collectCheckpoints();
+        if (checkpoints.isEmpty()) {
             log.info("Timestamp is null in ExecutionContext so committing it is skipped.");
             return;
         }
+        if (checkpoints.equals(this.lastCommitted)) {
+            // e.g. at shutdown in daemon mode, after the last run was committed
+            log.info("Timestamp is unchanged since it was last committed so committing it is skipped.");
+            return;
+        }
+        String lastCheckpointTimestamp = checkpoints.get("lastSuccessfulCollection");
 
         try{
             log.info("Trying to commit the last successful timestamp...");
-            S3TimestampManager timestampManager = new S3TimestampManager(this.targetBucket,
-                this.endpointURL,
+            S3TimestampManager timestampManager = new S3TimestampManager(this.s3Client,
+                this.targetBucket,
                 "",
                 this.deletes,
                 this.hocsSystem);
 
             timestampManager.getTimestamp();
-            boolean success = timestampManager.putTimestamp(lastCheckpointTimestamp);
+            boolean success = timestampManager.putTimestamps(checkpoints);
 
             SlackNotification slackNotification = new  SlackNotification(slackURLMap, this.deletes, this.hocsSystem);
             String timestampMessage = slackNotification.craftTimestampMessage(success, lastCheckpointTimestamp);
 
             if (success) {
-                log.info("Timestamp committed successfully during PreDestroy");
+                log.info("Timestamp committed successfully");
+                this.lastCommitted = checkpoints;
                 slackNotification.publishMessage(timestampMessage, "txa");
             }
             else {
@@ -134,8 +306,30 @@ public class TxaKafkaItemWriter extends KafkaItemWriter<String, DocumentRow> {
                 slackNotification.publishMessage(timestampMessage, "txa");
                 slackNotification.publishMessage(timestampMessage, "decs");
             }
-        } catch (URISyntaxException | IOException e) {
+        } catch (IOException e) {
             log.error(e.toString());
         }
     }
+
+    protected void acknowledgeCompletedChunks() {
+        /*
+        On an interruption the pending chunks are not drained, but any already acknowledged
+        can still advance the checkpoint before it is committed. Nothing is waited for here.
+         */
+        for (StepExecution execution : this.stepExecution.getJobExecution().getStepExecutions()) {
+            Deque<PendingChunk> pending = this.pendingChunks.get(execution.getId());
+            if (pending == null) {
+                continue;
+            }
+            try {
+                acknowledgePendingChunks(execution, pending, Integer.MAX_VALUE);
+            } catch (Exception e) {
+                log.error("A pending chunk failed, the checkpoint is left before it: " + e);
+            }
+        }
+    }
+
+    protected Map<String, String> collectCheckpoints() {
+        return CheckpointCommitter.collectCheckpoints(this.stepExecution);
+    }
 }
@@ -0,0 +1,180 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class DocumentJsonWriter {
+    /*
+    Writes the json of a DocumentRow, as the Kafka events, metadata sidecars and manifests
+    are published, without going through an ObjectMapper.
+
+    The output is byte for byte what new ObjectMapper().writeValueAsBytes(document) writes:
+    the fields in the order of DocumentRow's @JsonPropertyOrder, no whitespace, timestamps as
+    epoch milliseconds, null for a missing value, and Jackson's escaping of strings (the short
+    escapes for quotes, backslashes, backspaces, tabs, newlines, form feeds and carriage returns,
+    a unicode escape for other control characters and for each half of a surrogate pair, and
+    everything else as UTF-8).
+
+    Each thread writes into its own buffer which is reused from document to document.
+     */
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UUID = field("{", "uuid");
+    private static final byte[] EXTERNAL_REFERENCE_UUID = field(",", "externalReferenceUuid");
+    private static final byte[] CASE_TYPE = field(",", "caseType");
+    private static final byte[] TYPE = field(",", "type");
+    private static final byte[] PDF_LINK = field(",", "pdfLink");
+    private static final byte[] STATUS = field(",", "status");
+    private static final byte[] UPDATED_ON = field(",", "updatedOn");
+    private static final byte[] DELETED_ON = field(",", "deletedOn");
+    private static final byte[] DESTINATION_KEY = field(",", "destinationKey");
+    private static final byte[] SOURCE = field(",", "source");
+    private static final ThreadLocal<DocumentJsonWriter> writers = ThreadLocal.withInitial(DocumentJsonWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    private DocumentJsonWriter() {
+    }
+
+    public static byte[] toJson(DocumentRow document) {
+        DocumentJsonWriter writer = writers.get();
+        writer.write(document);
+        return Arrays.copyOf(writer.buffer, writer.length);
+    }
+
+    public static void writeJson(DocumentRow document, OutputStream out) throws IOException {
+        // e.g. one line of a manifest, without the copy toJson returns
+        DocumentJsonWriter writer = writers.get();
+        writer.write(document);
+        out.write(writer.buffer, 0, writer.length);
+    }
+
+    private void write(DocumentRow document) {
+        if (this.buffer.length > MAX_RETAINED_CAPACITY) {
+            // an unusually large document does not keep its buffer for the life of the thread
+            this.buffer = new byte[INITIAL_CAPACITY];
+        }
+        this.length = 0;
+        writeBytes(UUID);
+        writeString(document.getUuid());
+        writeBytes(EXTERNAL_REFERENCE_UUID);
+        writeString(document.getExternalReferenceUuid());
+        writeBytes(CASE_TYPE);
+        writeString(document.getCaseType());
+        writeBytes(TYPE);
+        writeString(document.getType());
+        writeBytes(PDF_LINK);
+        writeString(document.getPdfLink());
+        writeBytes(STATUS);
+        writeString(document.getStatus());
+        writeBytes(UPDATED_ON);
+        writeTimestamp(document.getUpdatedOnMicros());
+        writeBytes(DELETED_ON);
+        writeTimestamp(document.getDeletedOnMicros());
+        writeBytes(DESTINATION_KEY);
+        writeString(document.getDestinationKey());
+        writeBytes(SOURCE);
+        writeString(document.getSource());
+        ensureCapacity(1);
+        this.buffer[this.length++] = '}';
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+        this.length += bytes.length;
+    }
+
+    private void writeTimestamp(long micros) {
+        if (micros == DocumentRow.NO_TIMESTAMP) {
+            writeBytes(NULL);
+            return;
+        }
+        long millis = Math.floorDiv(micros, 1000L);
+        // at most a sign and 19 digits
+        ensureCapacity(20);
+        if (millis < 0) {
+            this.buffer[this.length++] = '-';
+            millis = -millis;
+        }
+        int start = this.length;
+        do {
+            this.buffer[this.length++] = (byte) ('0' + (millis % 10));
+            millis /= 10;
+        } while (millis > 0);
+        for (int i = start, j = this.length - 1; i < j; i++, j--) {
+            byte digit = this.buffer[i];
+            this.buffer[i] = this.buffer[j];
+            this.buffer[j] = digit;
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeBytes(NULL);
+            return;
+        }
+        // the quotes and at most 6 bytes (an escape) for each char
+        ensureCapacity(2 + 6 * value.length());
+        byte[] out = this.buffer;
+        int pos = this.length;
+        out[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    out[pos++] = (byte) c;
+                    continue;
+                }
+                out[pos++] = '\\';
+                switch (c) {
+                    case '"' -> out[pos++] = '"';
+                    case '\\' -> out[pos++] = '\\';
+                    case '\b' -> out[pos++] = 'b';
+                    case '\t' -> out[pos++] = 't';
+                    case '\n' -> out[pos++] = 'n';
+                    case '\f' -> out[pos++] = 'f';
+                    case '\r' -> out[pos++] = 'r';
+                    default -> pos = writeUnicodeEscape(out, pos, c);
+                }
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[pos++] = '\\';
+                pos = writeUnicodeEscape(out, pos, c);
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out[pos++] = '"';
+        this.length = pos;
+    }
+
+    private static int writeUnicodeEscape(byte[] out, int pos, char c) {
+        // the u and four hex digits, the backslash is already written
+        out[pos++] = 'u';
+        out[pos++] = HEX[(c >> 12) & 0xF];
+        out[pos++] = HEX[(c >> 8) & 0xF];
+        out[pos++] = HEX[(c >> 4) & 0xF];
+        out[pos++] = HEX[c & 0xF];
+        return pos;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (this.length + needed > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + needed));
+        }
+    }
+
+    private static byte[] field(String separator, String name) {
+        return (separator + "\"" + name + "\":").getBytes(StandardCharsets.US_ASCII);
+    }
+}
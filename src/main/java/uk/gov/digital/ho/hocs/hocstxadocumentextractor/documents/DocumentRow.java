@@ -1,25 +1,191 @@
 package uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Getter @Setter
+@JsonPropertyOrder({"uuid", "externalReferenceUuid", "caseType", "type", "pdfLink", "status",
+    "updatedOn", "deletedOn", "destinationKey", "source"})
 public class DocumentRow {
     /*
     A custom data structure to contain the information
     related to a single DECS document that this extractor
     cares about.
+
+    Kept compact as a chunk's worth of rows is held at once: the case type, type, status and
+    source (a few dozen distinct values) share one String instance per value, the timestamps
+    are held as epoch microseconds (the precision of Postgres timestamps) rather than as
+    Timestamp objects, and the destinationKey is only computed when it is first used.
+    The json of a row (the Kafka events and metadata sidecars) is unchanged, the property
+    order above is the order of the fields it had before.
+
+    getUpdatedOn and getDeletedOn build a new Timestamp on every call, they are kept for the
+    json and existing callers. The keys, checkpoints and logging use the micros directly,
+    see toLocalDateTime and timestampString.
      */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int MAX_CODES = 1024;
+    private static final ConcurrentHashMap<String, String> codes = new ConcurrentHashMap<>();
+
     private String uuid;
     private String externalReferenceUuid;
     private String caseType;
     private String type;
     private String pdfLink;
     private String status;
-    private Timestamp updatedOn;
-    private Timestamp deletedOn;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private long updatedOnMicros = NO_TIMESTAMP;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private long deletedOnMicros = NO_TIMESTAMP;
     private String destinationKey;
     private String source;
+
+    public void setCaseType(String caseType) {
+        this.caseType = code(caseType);
+    }
+
+    public void setType(String type) {
+        this.type = code(type);
+    }
+
+    public void setStatus(String status) {
+        this.status = code(status);
+    }
+
+    public void setSource(String source) {
+        this.source = code(source);
+    }
+
+    public Timestamp getUpdatedOn() {
+        return toTimestamp(this.updatedOnMicros);
+    }
+
+    public void setUpdatedOn(Timestamp updatedOn) {
+        this.updatedOnMicros = toMicros(updatedOn);
+    }
+
+    public Timestamp getDeletedOn() {
+        return toTimestamp(this.deletedOnMicros);
+    }
+
+    public void setDeletedOn(Timestamp deletedOn) {
+        this.deletedOnMicros = toMicros(deletedOn);
+    }
+
+    @JsonIgnore
+    public long getUpdatedOnMicros() {
+        return this.updatedOnMicros;
+    }
+
+    @JsonIgnore
+    public long getDeletedOnMicros() {
+        return this.deletedOnMicros;
+    }
+
+    public String getDestinationKey() {
+        if (this.destinationKey == null && this.updatedOnMicros != NO_TIMESTAMP) {
+            this.destinationKey = DocumentRowMapper.destinationKey(this.source, this.uuid,
+                this.externalReferenceUuid, this.updatedOnMicros);
+        }
+        return this.destinationKey;
+    }
+
+    static String code(String value) {
+        /*
+        The shared instance of a low cardinality value. Values beyond MAX_CODES distinct ones
+        are kept as they are, so an unexpectedly high cardinality column cannot grow the map.
+         */
+        if (value == null) {
+            return null;
+        }
+        String shared = codes.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (codes.size() >= MAX_CODES) {
+            return value;
+        }
+        shared = codes.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    static long toMicros(Timestamp timestamp) {
+        if (timestamp == null) {
+            return NO_TIMESTAMP;
+        }
+        return Math.floorDiv(timestamp.getTime(), 1000L) * 1000000L + timestamp.getNanos() / 1000;
+    }
+
+    public static LocalDateTime toLocalDateTime(long micros) {
+        /*
+        The date and time in the JVM's time zone, as Timestamp.toLocalDateTime gives them,
+        without building the Timestamp. They only differ before 1582, where a Timestamp
+        uses the Julian calendar.
+         */
+        if (micros == NO_TIMESTAMP) {
+            return null;
+        }
+        long seconds = Math.floorDiv(micros, 1000000L);
+        int nanos = (int) Math.floorMod(micros, 1000000L) * 1000;
+        ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochSecond(seconds));
+        return LocalDateTime.ofEpochSecond(seconds, nanos, offset);
+    }
+
+    public static String timestampString(long micros) {
+        /*
+        The timestamp as Timestamp.toString writes it, e.g. 2023-07-28 12:34:56.789 or
+        2023-07-28 12:34:56.0, which is the format of the checkpoints committed to S3.
+         */
+        LocalDateTime dateTime = toLocalDateTime(micros);
+        if (dateTime == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(29);
+        appendPadded(builder, dateTime.getYear(), 4).append('-');
+        appendPadded(builder, dateTime.getMonthValue(), 2).append('-');
+        appendPadded(builder, dateTime.getDayOfMonth(), 2).append(' ');
+        appendPadded(builder, dateTime.getHour(), 2).append(':');
+        appendPadded(builder, dateTime.getMinute(), 2).append(':');
+        appendPadded(builder, dateTime.getSecond(), 2).append('.');
+        int nanos = dateTime.getNano();
+        if (nanos == 0) {
+            return builder.append('0').toString();
+        }
+        appendPadded(builder, nanos, 9);
+        int length = builder.length();
+        while (builder.charAt(length - 1) == '0') {
+            length--;
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    static StringBuilder appendPadded(StringBuilder builder, int value, int width) {
+        // zero padded to at least width digits, the values are never negative
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        return builder.append(value);
+    }
+
+    static Timestamp toTimestamp(long micros) {
+        if (micros == NO_TIMESTAMP) {
+            return null;
+        }
+        Timestamp timestamp = new Timestamp(Math.floorDiv(micros, 1000000L) * 1000L);
+        timestamp.setNanos((int) Math.floorMod(micros, 1000000L) * 1000);
+        return timestamp;
+    }
 }
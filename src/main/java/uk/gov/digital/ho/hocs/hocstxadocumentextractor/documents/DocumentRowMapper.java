@@ -4,8 +4,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.StringJoiner;
 
 import org.springframework.jdbc.core.RowMapper;
 
@@ -14,9 +12,6 @@ public class DocumentRowMapper implements RowMapper<DocumentRow>{
     Maps rows from the ResultSet of the PostgresItemReader to instances
     of the DocumentRow class.
      */
-    private static final DateTimeFormatter yearFormatter = DateTimeFormatter.ofPattern("yyyy");
-    private static final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MM");
-    private static final DateTimeFormatter dayFormatter = DateTimeFormatter.ofPattern("dd");
     public String hocsSystem;
 
     public DocumentRowMapper(String hocsSystem) {
@@ -34,30 +29,31 @@ public class DocumentRowMapper implements RowMapper<DocumentRow>{
         document.setStatus(rs.getString("status"));
         document.setUpdatedOn(rs.getTimestamp("updated_on"));
         document.setDeletedOn(rs.getTimestamp("deleted_on"));
-
-        String destinationKey = computeDestinationKey(document.getUuid(), document.getExternalReferenceUuid(), document.getUpdatedOn());
-        document.setDestinationKey(destinationKey);
-
+        // the destinationKey is computed from these when it is first used, see DocumentRow
         document.setSource(this.hocsSystem);
 
         return document;
     }
 
     public String computeDestinationKey(String uuid, String extRefUuid, Timestamp updatedOn) {
+        return destinationKey(this.hocsSystem, uuid, extRefUuid, DocumentRow.toMicros(updatedOn));
+    }
+
+    static String destinationKey(String hocsSystem, String uuid, String extRefUuid, long updatedOnMicros) {
         /*
         Craft the path where objects will be written to in the destination S3 bucket.
 
-        Partition by year, month, day of the updatedOn date.
+        Partition by year, month, day of the updatedOn date. The key is built in one StringBuilder
+        rather than with DateTimeFormatters, as it is computed for every document.
          */
-        LocalDateTime dateTime = updatedOn.toLocalDateTime();
-        String year = "year=" + dateTime.format(yearFormatter);
-        String month = "month=" + dateTime.format(monthFormatter);
-        String day = "day=" + dateTime.format(dayFormatter);
-        String uuidWithExtension = uuid + ".pdf";
-
-        StringJoiner joiner = new StringJoiner("/");
+        LocalDateTime dateTime = DocumentRow.toLocalDateTime(updatedOnMicros);
         // example destinationKey: decs/cs/year=2023/month=07/day=28/externalReferenceUuid/uuid.pdf
-        joiner.add("decs").add(this.hocsSystem).add(year).add(month).add(day).add(extRefUuid).add(uuidWithExtension);
-        return joiner.toString();
+        StringBuilder key = new StringBuilder(128);
+        key.append("decs/").append(hocsSystem).append("/year=");
+        DocumentRow.appendPadded(key, dateTime.getYear(), 4).append("/month=");
+        DocumentRow.appendPadded(key, dateTime.getMonthValue(), 2).append("/day=");
+        DocumentRow.appendPadded(key, dateTime.getDayOfMonth(), 2).append('/');
+        key.append(extRefUuid).append('/').append(uuid).append(".pdf");
+        return key.toString();
     }
 }
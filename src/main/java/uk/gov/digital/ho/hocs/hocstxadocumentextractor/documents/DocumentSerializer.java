@@ -1,6 +1,5 @@
 package uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
@@ -8,11 +7,11 @@ import org.slf4j.LoggerFactory;
 
 public class DocumentSerializer implements Serializer<DocumentRow> {
     /*
-    Serialize each DocumentRow object as json for publishing to Kafka
+    Serialize each DocumentRow object as json for publishing to Kafka,
+    see DocumentJsonWriter
      */
     private static final Logger log = LoggerFactory.getLogger(
         DocumentSerializer.class);
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Override
     public byte[] serialize(String topic, DocumentRow document) {
@@ -25,7 +24,7 @@ public class DocumentSerializer implements Serializer<DocumentRow> {
                 log.warn("Null data received by DocumentSerializer");
                 return null;
             }
-            return objectMapper.writeValueAsBytes(document);
+            return DocumentJsonWriter.toJson(document);
         } catch (Exception e) {
             log.error(e.toString());
             throw new SerializationException("Error during serialization");
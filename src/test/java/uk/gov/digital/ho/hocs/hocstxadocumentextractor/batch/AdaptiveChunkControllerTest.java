@@ -0,0 +1,57 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdaptiveChunkControllerTest {
+
+    @Test
+    public void fastChunksGrowTest() {
+        /*
+        Test the chunk size grows towards the target time, by at most a factor of 2 per chunk,
+        up to the maximum chunk size.
+         */
+        AdaptiveChunkController controller = new AdaptiveChunkController(10, 2, 50, 1000);
+
+        controller.adjust(10, 100, false);
+        assertEquals(20, controller.getChunkSize());
+        controller.adjust(20, 500, false);
+        assertEquals(40, controller.getChunkSize());
+        controller.adjust(40, 100, false);
+        assertEquals(50, controller.getChunkSize());
+    }
+
+    @Test
+    public void slowChunksShrinkTest() {
+        /*
+        Test the chunk size shrinks towards the target time and stays within the minimum.
+         */
+        AdaptiveChunkController controller = new AdaptiveChunkController(100, 2, 500, 1000);
+
+        controller.adjust(100, 1250, false);
+        assertEquals(80, controller.getChunkSize());
+        controller.adjust(80, 60000, false);
+        assertEquals(40, controller.getChunkSize());
+        controller.adjust(40, 1000, false);
+        assertEquals(40, controller.getChunkSize());
+    }
+
+    @Test
+    public void errorsHalveTest() {
+        /*
+        Test the chunk size is halved when errors occurred, however fast the chunk was,
+        and the last (empty) chunk of a step leaves it unchanged.
+         */
+        AdaptiveChunkController controller = new AdaptiveChunkController(100, 20, 500, 1000);
+
+        controller.adjust(100, 10, true);
+        assertEquals(50, controller.getChunkSize());
+        controller.adjust(0, 0, true);
+        assertEquals(25, controller.getChunkSize());
+        controller.adjust(0, 0, true);
+        assertEquals(20, controller.getChunkSize());
+        controller.adjust(0, 5, false);
+        assertEquals(20, controller.getChunkSize());
+    }
+}
@@ -0,0 +1,41 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class BatchConfigurationTest {
+
+    private static BatchConfiguration configuration(String metadataMode) {
+        BatchConfiguration config = new BatchConfiguration();
+        ReflectionTestUtils.setField(config, "sourceBucket", "source-bucket");
+        ReflectionTestUtils.setField(config, "targetBucket", "target-bucket");
+        ReflectionTestUtils.setField(config, "metadataMode", metadataMode);
+        ReflectionTestUtils.setField(config, "multipartThresholdMb", 0L);
+        ReflectionTestUtils.setField(config, "partSizeMb", 8L);
+        ReflectionTestUtils.setField(config, "partConcurrency", 1);
+        return config;
+    }
+
+    @Test
+    public void knownMetadataModesAcceptedTest() {
+        /*
+        Test each metadata mode, in any case, is accepted.
+         */
+        for (String metadataMode : new String[] {"sidecar", "manifest", "both", "MANIFEST"}) {
+            assertNotNull(configuration(metadataMode).processor(mock(S3Client.class)));
+        }
+    }
+
+    @Test
+    public void unknownMetadataModeRefusedTest() {
+        /*
+        Test a misspelt metadata mode fails at start-up rather than falling back to sidecars.
+         */
+        assertThrows(IllegalStateException.class, () -> configuration("manifests").processor(mock(S3Client.class)));
+    }
+}
@@ -0,0 +1,50 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CaseTypePartitionerTest {
+
+    @Test
+    public void partitionPerCaseTypeTest() {
+        /*
+        Test one partition is created for each case type regardless of the gridSize
+         */
+        CaseTypePartitioner partitioner = new CaseTypePartitioner(Arrays.asList("a1", "a2", "e1"));
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        stepExecution.getJobExecution().getExecutionContext().putString("lastSuccessfulCollection", "2023-03-22 12:00:00.0");
+        partitioner.saveJobContext(stepExecution);
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(2);
+
+        assertEquals(3, partitions.size());
+        assertEquals("a1", partitions.get("partition-a1").getString("caseType"));
+        assertEquals("e1", partitions.get("partition-e1").getString("caseType"));
+    }
+
+    @Test
+    public void partitionTimestampTest() {
+        /*
+        Test each partition starts from its own timestamp when it has one and from the
+        job timestamp otherwise.
+         */
+        CaseTypePartitioner partitioner = new CaseTypePartitioner(Arrays.asList("a1", "a2"));
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        ExecutionContext jobContext = stepExecution.getJobExecution().getExecutionContext();
+        jobContext.putString("lastSuccessfulCollection", "2023-03-22 12:00:00.0");
+        jobContext.putString("lastSuccessfulCollection.a2", "2023-03-23 12:00:00.0");
+        partitioner.saveJobContext(stepExecution);
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(2);
+
+        assertEquals("2023-03-22 12:00:00.0", partitions.get("partition-a1").getString("partitionLastSuccessfulCollection"));
+        assertEquals("2023-03-23 12:00:00.0", partitions.get("partition-a2").getString("partitionLastSuccessfulCollection"));
+    }
+}
@@ -0,0 +1,83 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ChangeNotificationListenerTest {
+
+    private final DataSource metadataSource = mock(DataSource.class);
+    private final JobScheduler jobScheduler = mock(JobScheduler.class);
+    private final Connection connection = mock(Connection.class);
+    private final Statement statement = mock(Statement.class);
+    private final PGConnection pgConnection = mock(PGConnection.class);
+    private ChangeNotificationListener listener;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        listener = new ChangeNotificationListener(metadataSource, jobScheduler, "document_metadata_changes");
+        listener.setReconnectMillis(0);
+    }
+
+    private PGNotification[] stopListening() {
+        // the listen loop returns once the listener is destroyed, after handling this poll
+        listener.destroy();
+        return new PGNotification[0];
+    }
+
+    @Test
+    public void notificationRequestsRunTest() throws SQLException {
+        /*
+        Test a change notification asks the scheduler for a run and an empty poll does not.
+         */
+        when(metadataSource.getConnection()).thenReturn(connection);
+        when(pgConnection.getNotifications(anyInt()))
+            .thenReturn(new PGNotification[] {mock(PGNotification.class)})
+            .thenReturn(new PGNotification[0])
+            .thenAnswer(invocation -> stopListening());
+
+        listener.listen();
+
+        verify(statement).execute("LISTEN document_metadata_changes");
+        verify(jobScheduler, times(1)).requestRun();
+        verify(connection).close();
+    }
+
+    @Test
+    public void listenerRecoversAfterSQLExceptionTest() throws SQLException {
+        /*
+        Test a lost connection is closed and replaced, LISTENing again, and a run is requested
+        on reconnecting to collect the changes made while disconnected.
+         */
+        Connection lostConnection = mock(Connection.class);
+        PGConnection lostPgConnection = mock(PGConnection.class);
+        when(lostConnection.createStatement()).thenReturn(statement);
+        when(lostConnection.unwrap(PGConnection.class)).thenReturn(lostPgConnection);
+        when(lostPgConnection.getNotifications(anyInt())).thenThrow(new SQLException("An I/O error occurred"));
+        when(metadataSource.getConnection())
+            .thenReturn(lostConnection)
+            .thenThrow(new SQLException("Connection refused"))
+            .thenReturn(connection);
+        when(pgConnection.getNotifications(anyInt())).thenAnswer(invocation -> stopListening());
+
+        listener.listen();
+
+        verify(lostConnection).close();
+        verify(statement, times(2)).execute("LISTEN document_metadata_changes");
+        verify(jobScheduler, times(1)).requestRun();
+    }
+}
@@ -0,0 +1,107 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CheckpointCommitterTest {
+
+    @Test
+    public void commitEveryIntervalChunksTest() throws Exception {
+        /*
+        Test the checkpoint is only committed once the chunk interval is reached
+        and the existing record is only loaded once.
+         */
+        S3TimestampManager timestampManager = mock(S3TimestampManager.class);
+        when(timestampManager.putTimestamps(any())).thenReturn(true);
+        CheckpointCommitter committer = new CheckpointCommitter(timestampManager, 2, 0);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+        stepExecution.getExecutionContext().putString("lastSuccessfulCollection", "2023-07-28 12:00:00.0");
+        committer.afterChunk(chunkContext);
+        verify(timestampManager, never()).putTimestamps(any());
+
+        committer.afterChunk(chunkContext);
+        verify(timestampManager, times(1)).putTimestamps(Map.of("lastSuccessfulCollection", "2023-07-28 12:00:00.0"));
+
+        stepExecution.getExecutionContext().putString("lastSuccessfulCollection", "2023-07-28 13:00:00.0");
+        committer.afterChunk(chunkContext);
+        committer.afterChunk(chunkContext);
+        verify(timestampManager, times(1)).putTimestamps(Map.of("lastSuccessfulCollection", "2023-07-28 13:00:00.0"));
+        verify(timestampManager, times(1)).getTimestamp();
+    }
+
+    @Test
+    public void unchangedCheckpointNotCommittedTest() throws Exception {
+        /*
+        Test an interval in which no further documents were acknowledged does not put the record again.
+         */
+        S3TimestampManager timestampManager = mock(S3TimestampManager.class);
+        when(timestampManager.putTimestamps(any())).thenReturn(true);
+        CheckpointCommitter committer = new CheckpointCommitter(timestampManager, 1, 0);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+        stepExecution.getExecutionContext().putString("lastSuccessfulCollection", "2023-07-28 12:00:00.0");
+        committer.afterChunk(chunkContext);
+        committer.afterChunk(chunkContext);
+        committer.afterChunk(chunkContext);
+
+        verify(timestampManager, times(1)).putTimestamps(any());
+    }
+
+    @Test
+    public void recordReloadedForEachStepTest() throws Exception {
+        /*
+        Test a later run (daemon mode) loads the existing record again and commits its checkpoint
+        even when it equals the previous run's.
+         */
+        S3TimestampManager timestampManager = mock(S3TimestampManager.class);
+        when(timestampManager.putTimestamps(any())).thenReturn(true);
+        CheckpointCommitter committer = new CheckpointCommitter(timestampManager, 1, 0);
+
+        for (int run = 0; run < 2; run++) {
+            StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+            stepExecution.getExecutionContext().putString("lastSuccessfulCollection", "2023-07-28 12:00:00.0");
+            committer.beforeStep(stepExecution);
+            committer.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+        }
+
+        verify(timestampManager, times(2)).getTimestamp();
+        verify(timestampManager, times(2)).putTimestamps(any());
+    }
+
+    @Test
+    public void ledgerCommittedBeforeCheckpointTest() throws Exception {
+        /*
+        Test the published deletes are committed with each periodic checkpoint, before it.
+         */
+        S3TimestampManager timestampManager = mock(S3TimestampManager.class);
+        when(timestampManager.putTimestamps(any())).thenReturn(true);
+        PublishedDeletesLedger ledger = mock(PublishedDeletesLedger.class);
+        CheckpointCommitter committer = new CheckpointCommitter(timestampManager, 1, 0);
+        committer.setLedger(ledger);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+
+        stepExecution.getExecutionContext().putString("lastSuccessfulCollection", "2023-07-28 12:00:00.0");
+        committer.afterChunk(new ChunkContext(new StepContext(stepExecution)));
+
+        InOrder inOrder = inOrder(ledger, timestampManager);
+        inOrder.verify(ledger).commit();
+        inOrder.verify(timestampManager).putTimestamps(Map.of("lastSuccessfulCollection", "2023-07-28 12:00:00.0"));
+    }
+}
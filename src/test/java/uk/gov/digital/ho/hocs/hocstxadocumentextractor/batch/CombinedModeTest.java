@@ -0,0 +1,283 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CombinedModeTest {
+    /*
+    Runs the documentExtractionJob of combined mode as BatchConfiguration builds it (the split of
+    an ingest and a delete collection job) against an in-memory JobRepository, with the S3 target
+    bucket and Kafka mocked and the metadata database replaced by lists of documents.
+     */
+    private static final String INGESTS = "decs/cs/ingests.json";
+    private static final String DELETES = "decs/cs/deletes.json";
+    private final Map<String, byte[]> bucket = new ConcurrentHashMap<>();
+    private final List<String> putKeys = Collections.synchronizedList(new ArrayList<>());
+    private S3Client s3Client;
+    private JobRepository jobRepository;
+    private JobExplorer jobExplorer;
+    private TaskExecutorJobLauncher jobLauncher;
+    private JdbcTransactionManager transactionManager;
+
+    static class ListReaderConfiguration extends BatchConfiguration {
+        /*
+        Reads the given documents rather than querying the metadata database.
+         */
+        private final List<DocumentRow> ingests;
+        private final List<DocumentRow> deletes;
+
+        ListReaderConfiguration(List<DocumentRow> ingests, List<DocumentRow> deletes) {
+            this.ingests = ingests;
+            this.deletes = deletes;
+        }
+
+        @Override
+        protected AbstractItemCountingItemStreamItemReader<DocumentRow> createReader(DataSource metadataSource,
+                                                                                    AdaptiveChunkController chunkController,
+                                                                                    boolean deletes,
+                                                                                    String metadataSchema,
+                                                                                    String metadataTable,
+                                                                                    String hocsSystem) {
+            List<DocumentRow> documents = deletes ? this.deletes : this.ingests;
+            AbstractItemCountingItemStreamItemReader<DocumentRow> reader = new AbstractItemCountingItemStreamItemReader<>() {
+                private Iterator<DocumentRow> iterator;
+
+                @Override
+                protected void doOpen() {
+                    this.iterator = documents.iterator();
+                }
+
+                @Override
+                protected DocumentRow doRead() {
+                    return this.iterator.hasNext() ? this.iterator.next() : null;
+                }
+
+                @Override
+                protected void doClose() {
+                }
+            };
+            reader.setName(deletes ? "deleteReader" : "ingestReader");
+            return reader;
+        }
+    }
+
+    private static DocumentRow document(String uuid, String updatedOn, String deletedOn) {
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid(uuid);
+        doc.setExternalReferenceUuid(uuid + "-a1");
+        doc.setCaseType("a1");
+        doc.setType("ORIGINAL");
+        doc.setPdfLink(uuid + ".pdf");
+        doc.setStatus("UPLOADED");
+        doc.setUpdatedOn(Timestamp.valueOf(updatedOn));
+        doc.setDeletedOn(deletedOn == null ? null : Timestamp.valueOf(deletedOn));
+        doc.setSource("CS");
+        return doc;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        when(provider.getObject()).thenReturn(bean);
+        return provider;
+    }
+
+    private static KafkaTemplate kafkaTemplate(String topic, CompletableFuture<?> firstSend, CompletableFuture<?>... sends) {
+        KafkaTemplate kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.getDefaultTopic()).thenReturn(topic);
+        when(kafkaTemplate.sendDefault(any(), any())).thenReturn(firstSend, sends);
+        return kafkaTemplate;
+    }
+
+    private String committed(String key) {
+        return new String(this.bucket.get(key), StandardCharsets.UTF_8);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.bucket.put(INGESTS, "{\"lastSuccessfulCollection\":\"2023-01-01 00:00:00\"}".getBytes(StandardCharsets.UTF_8));
+        this.bucket.put(DELETES, "{\"lastSuccessfulCollection\":\"2023-01-01 00:00:00\"}".getBytes(StandardCharsets.UTF_8));
+        this.s3Client = mock(S3Client.class);
+        when(this.s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            return new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(this.bucket.get(request.key()))));
+        });
+        PutObjectResponse putResponse = mock(PutObjectResponse.class);
+        SdkHttpResponse httpResponse = mock(SdkHttpResponse.class);
+        when(httpResponse.isSuccessful()).thenReturn(true);
+        when(putResponse.sdkHttpResponse()).thenReturn(httpResponse);
+        when(this.s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0);
+            RequestBody body = invocation.getArgument(1);
+            this.bucket.put(request.key(), body.contentStreamProvider().newStream().readAllBytes());
+            this.putKeys.add(request.key());
+            return putResponse;
+        });
+
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("classpath:org/springframework/batch/core/schema-h2.sql")
+            .build();
+        this.transactionManager = new JdbcTransactionManager(database);
+        JobRepositoryFactoryBean repositoryFactory = new JobRepositoryFactoryBean();
+        repositoryFactory.setDataSource(database);
+        repositoryFactory.setTransactionManager(this.transactionManager);
+        repositoryFactory.afterPropertiesSet();
+        this.jobRepository = repositoryFactory.getObject();
+        JobExplorerFactoryBean explorerFactory = new JobExplorerFactoryBean();
+        explorerFactory.setDataSource(database);
+        explorerFactory.setTransactionManager(this.transactionManager);
+        explorerFactory.afterPropertiesSet();
+        this.jobExplorer = explorerFactory.getObject();
+        this.jobLauncher = new TaskExecutorJobLauncher();
+        this.jobLauncher.setJobRepository(this.jobRepository);
+        this.jobLauncher.afterPropertiesSet();
+    }
+
+    private JobExecution runCombinedJob(BatchConfiguration config, TxaKafkaItemWriter writer,
+                                        TxaKafkaItemWriter deleteWriter) throws Exception {
+        ReflectionTestUtils.setField(config, "combined", true);
+        ReflectionTestUtils.setField(config, "hocsSystem", "CS");
+        ReflectionTestUtils.setField(config, "targetBucket", "target-bucket");
+        ReflectionTestUtils.setField(config, "lastCollection", "");
+        ReflectionTestUtils.setField(config, "chunkSize", 1);
+        ReflectionTestUtils.setField(config, "startLimit", 1);
+        ReflectionTestUtils.setField(config, "maxPendingChunks", 0);
+        ReflectionTestUtils.setField(config, "checkpointIntervalChunks", 0);
+        ReflectionTestUtils.setField(config, "checkpointIntervalSeconds", 0);
+        ReflectionTestUtils.setField(config, "metadataMode", "sidecar");
+
+        S3ItemProcessor processor = mock(S3ItemProcessor.class);
+        when(processor.process(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        ReadCountStepExecutionListener readCountListener = new ReadCountStepExecutionListener();
+        S3ConnectionWarmUpListener warmUpListener = new S3ConnectionWarmUpListener(this.s3Client, "source-bucket", "target-bucket", 0);
+        Step mainStep = config.mainStep(this.jobRepository, this.transactionManager,
+            config.reader(null, provider(null)), processor, writer, provider(null), null,
+            config.checkpointCommitter(this.s3Client), provider(null), null, null, null,
+            readCountListener, warmUpListener, config.promotionListener());
+        Step deleteStep = config.deleteStep(this.jobRepository, this.transactionManager, null, this.s3Client,
+            deleteWriter, provider(null), readCountListener, config.promotionListener());
+        JobStartFinishListener listener = new JobStartFinishListener(this.s3Client, "target-bucket", "", false, "CS",
+            mock(SlackNotification.class));
+        Job job = config.documentExtractionJob(this.jobRepository, this.jobExplorer, this.jobLauncher,
+            this.transactionManager, this.s3Client, provider(listener), provider(mainStep), provider(deleteStep), provider(null),
+            processor, provider(null), provider(null), readCountListener, warmUpListener, config.promotionListener());
+        return this.jobLauncher.run(job, new JobParametersBuilder().addLong("run.id", 1L).toJobParameters());
+    }
+
+    private static BatchStatus collectionStatus(JobExecution jobExecution, String stepName) {
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            if (stepExecution.getStepName().equals(stepName)) {
+                return stepExecution.getStatus();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void eachCollectionCommitsItsOwnTimestampTest() throws Exception {
+        /*
+        Test the ingest collection only commits ingests.json and the delete collection only deletes.json,
+        each with the timestamp of the last document it published.
+         */
+        BatchConfiguration config = new ListReaderConfiguration(
+            List.of(document("ingest-1", "2023-02-01 00:00:00", null), document("ingest-2", "2023-02-02 00:00:00", null)),
+            List.of(document("delete-1", "2022-06-01 00:00:00", "2023-03-01 00:00:00")));
+        TxaKafkaItemWriter writer = config.writer(this.s3Client,
+            kafkaTemplate("txa-decs-ingests", CompletableFuture.completedFuture(null)));
+        TxaKafkaItemWriter deleteWriter = new TxaKafkaItemWriter(this.s3Client, "target-bucket", new HashMap<>(), true, "CS",
+            kafkaTemplate("txa-decs-deletes", CompletableFuture.completedFuture(null)), 0);
+
+        JobExecution jobExecution = runCombinedJob(config, writer, deleteWriter);
+        assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        assertEquals(BatchStatus.COMPLETED, collectionStatus(jobExecution, "ingestCollection"));
+        assertEquals(BatchStatus.COMPLETED, collectionStatus(jobExecution, "deleteCollection"));
+
+        writer.commitTimestamp();
+        assertEquals(List.of(INGESTS), this.putKeys);
+        this.putKeys.clear();
+        deleteWriter.commitTimestamp();
+        assertEquals(List.of(DELETES), this.putKeys);
+
+        assertTrue(committed(INGESTS).contains("\"lastSuccessfulCollection\":\"2023-02-02 00:00:00.0\""));
+        assertTrue(committed(DELETES).contains("\"lastSuccessfulCollection\":\"2023-03-01 00:00:00.0\""));
+    }
+
+    @Test
+    public void failedCollectionDoesNotCommitTheOtherTimestampTest() throws Exception {
+        /*
+        Test a delete collection failing after its first document leaves deletes.json at that document
+        and does not stop, or take the timestamp of, the ingest collection.
+         */
+        BatchConfiguration config = new ListReaderConfiguration(
+            List.of(document("ingest-1", "2023-02-01 00:00:00", null), document("ingest-2", "2023-02-02 00:00:00", null)),
+            List.of(document("delete-1", "2022-06-01 00:00:00", "2023-03-01 00:00:00"),
+                document("delete-2", "2022-06-01 00:00:00", "2023-03-02 00:00:00")));
+        TxaKafkaItemWriter writer = config.writer(this.s3Client,
+            kafkaTemplate("txa-decs-ingests", CompletableFuture.completedFuture(null)));
+        TxaKafkaItemWriter deleteWriter = new TxaKafkaItemWriter(this.s3Client, "target-bucket", new HashMap<>(), true, "CS",
+            kafkaTemplate("txa-decs-deletes", CompletableFuture.completedFuture(null),
+                CompletableFuture.failedFuture(new IllegalStateException("broker unavailable"))), 0);
+
+        JobExecution jobExecution = runCombinedJob(config, writer, deleteWriter);
+        assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+        assertEquals(BatchStatus.COMPLETED, collectionStatus(jobExecution, "ingestCollection"));
+        assertEquals(BatchStatus.FAILED, collectionStatus(jobExecution, "deleteCollection"));
+
+        writer.commitTimestamp();
+        deleteWriter.commitTimestamp();
+        assertTrue(committed(INGESTS).contains("\"lastSuccessfulCollection\":\"2023-02-02 00:00:00.0\""));
+        assertTrue(committed(DELETES).contains("\"lastSuccessfulCollection\":\"2023-03-01 00:00:00.0\""));
+    }
+}
@@ -0,0 +1,61 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DocumentMetadataQueriesTest {
+
+    @Test
+    public void parseDocumentTypesTest() {
+        /*
+        Test the configured entries are parsed into the document types of each case type, in order.
+         */
+        String[] entries = {"a1=ORIGINAL|CONTRIBUTION", " c7=Original complaint", ""};
+
+        Map<String, List<String>> documentTypes = DocumentMetadataQueries.parseDocumentTypes(entries);
+
+        assertEquals(List.of("a1", "c7"), List.copyOf(documentTypes.keySet()));
+        assertEquals(List.of("ORIGINAL", "CONTRIBUTION"), documentTypes.get("a1"));
+        assertEquals(List.of("Original complaint"), documentTypes.get("c7"));
+    }
+
+    @Test
+    public void invalidCaseTypeTest() {
+        /*
+        Test a case type which could change the query is rejected.
+         */
+        String[] entries = {"a1' OR '1'='1=ORIGINAL"};
+
+        assertThrows(IllegalArgumentException.class, () -> DocumentMetadataQueries.parseDocumentTypes(entries));
+    }
+
+    @Test
+    public void parametersTest() {
+        /*
+        Test the timestamps and every (case type, type) pair are bound, and only the partition's
+        case type is included in partitioned mode.
+         */
+        Map<String, List<String>> documentTypes = DocumentMetadataQueries.parseDocumentTypes(
+            new String[] {"a1=ORIGINAL|CONTRIBUTION", "b5=Further correspondence from MP's Office"});
+
+        Object[] parameters = DocumentMetadataQueries.parameters("2023-03-22 12:00:00", null, documentTypes, null);
+        assertEquals("2023-03-22 12:00:00", parameters[0]);
+        assertEquals(DocumentMetadataQueries.NO_UPPER_BOUND, parameters[1]);
+        assertArrayEquals(new String[] {"a1", "a1", "b5"}, (String[]) parameters[2]);
+        assertArrayEquals(new String[] {"ORIGINAL", "CONTRIBUTION", "Further correspondence from MP's Office"},
+            (String[]) parameters[3]);
+
+        Object[] partitionParameters = DocumentMetadataQueries.parameters("2023-03-22 12:00:00", "2023-03-23 00:00:00",
+            documentTypes, "b5");
+        assertEquals("2023-03-23 00:00:00", partitionParameters[1]);
+        assertArrayEquals(new String[] {"b5"}, (String[]) partitionParameters[2]);
+        assertArrayEquals(new String[] {"Further correspondence from MP's Office"}, (String[]) partitionParameters[3]);
+        assertEquals(0, ((String[]) DocumentMetadataQueries.parameters("2023-03-22 12:00:00", null, documentTypes, "e1")[2]).length);
+    }
+}
@@ -0,0 +1,82 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JobSchedulerTest {
+
+    private final JobLauncher jobLauncher = mock(JobLauncher.class);
+    private final JobExplorer jobExplorer = mock(JobExplorer.class);
+    private final Job job = mock(Job.class);
+    private final TxaKafkaItemWriter writer = mock(TxaKafkaItemWriter.class);
+    private JobScheduler jobScheduler;
+
+    @BeforeEach
+    void setUp() {
+        when(job.getName()).thenReturn("documentExtractionJob");
+        when(job.getJobParametersIncrementer()).thenReturn(new RunIdIncrementer());
+        jobScheduler = new JobScheduler(jobLauncher, jobExplorer, job, List.of(writer), null, 3600);
+        jobScheduler.setRequestDelayMillis(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobScheduler.destroy();
+    }
+
+    @Test
+    public void burstOfRequestsRunsOnceTest() throws Exception {
+        /*
+        Test requests made before the requested run starts are all collected by that one run.
+         */
+        when(jobLauncher.run(eq(job), any(JobParameters.class))).thenReturn(MetaDataInstanceFactory.createJobExecution());
+
+        for (int i = 0; i < 10; i++) {
+            jobScheduler.requestRun();
+        }
+
+        verify(jobLauncher, timeout(2000).times(1)).run(eq(job), any(JobParameters.class));
+        verify(jobLauncher, after(500).times(1)).run(eq(job), any(JobParameters.class));
+        verify(writer, times(1)).commitTimestamp();
+    }
+
+    @Test
+    public void requestDuringRunRunsOnceMoreTest() throws Exception {
+        /*
+        Test requests made while a run is in progress are collected by exactly one run after it.
+         */
+        AtomicInteger runs = new AtomicInteger();
+        when(jobLauncher.run(eq(job), any(JobParameters.class))).thenAnswer(invocation -> {
+            if (runs.incrementAndGet() == 1) {
+                jobScheduler.requestRun();
+                jobScheduler.requestRun();
+            }
+            return MetaDataInstanceFactory.createJobExecution();
+        });
+
+        jobScheduler.requestRun();
+
+        verify(jobLauncher, timeout(2000).times(2)).run(eq(job), any(JobParameters.class));
+        verify(jobLauncher, after(500).times(2)).run(eq(job), any(JobParameters.class));
+        verify(writer, times(2)).commitTimestamp();
+    }
+}
@@ -0,0 +1,129 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.ExecutionContextPromotionListener;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JobStartFinishListenerTest {
+
+    @Test
+    public void watermarkKeptBetweenRunsTest() {
+        /*
+        Test a run after a completed run starts from the timestamp that run reached,
+        without reading the timestamp from S3 again.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        byte[] metadata = "{\"lastSuccessfulCollection\":\"2023-01-01 00:00:00\"}".getBytes(StandardCharsets.UTF_8);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+            GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(metadata))));
+        JobStartFinishListener listener = new JobStartFinishListener(s3Client, "bucket", "", false, "CS",
+            mock(SlackNotification.class));
+
+        JobExecution firstRun = MetaDataInstanceFactory.createJobExecution("documentExtractionJob", 1L, 1L);
+        listener.beforeJob(firstRun);
+        assertEquals("2023-01-01 00:00:00", firstRun.getExecutionContext().getString("lastSuccessfulCollection"));
+
+        StepExecution stepExecution = firstRun.createStepExecution("mainStep");
+        stepExecution.getExecutionContext().putString("lastSuccessfulCollection", "2023-02-01 00:00:00.0");
+        firstRun.setStatus(BatchStatus.COMPLETED);
+        listener.rememberWatermark(firstRun);
+
+        JobExecution secondRun = MetaDataInstanceFactory.createJobExecution("documentExtractionJob", 2L, 2L);
+        listener.beforeJob(secondRun);
+        assertEquals("2023-02-01 00:00:00.0", secondRun.getExecutionContext().getString("lastSuccessfulCollection"));
+        verify(s3Client, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void watermarkKeptAfterFailedRunTest() {
+        /*
+        Test a run after a failed run starts from the checkpoint that run reached, and a run after
+        one which failed before its step started keeps it, rather than going back to the override.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        byte[] metadata = "{\"lastSuccessfulCollection\":\"2023-01-01 00:00:00\"}".getBytes(StandardCharsets.UTF_8);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+            GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(metadata))));
+        JobStartFinishListener listener = new JobStartFinishListener(s3Client, "bucket", "2022-01-01 00:00:00",
+            false, "CS", mock(SlackNotification.class));
+
+        JobExecution firstRun = MetaDataInstanceFactory.createJobExecution("documentExtractionJob", 1L, 1L);
+        listener.beforeJob(firstRun);
+        assertEquals("2022-01-01 00:00:00", firstRun.getExecutionContext().getString("lastSuccessfulCollection"));
+        StepExecution failedStep = firstRun.createStepExecution("mainStep");
+        failedStep.getExecutionContext().putString("lastSuccessfulCollection", "2022-06-01 00:00:00.0");
+        failedStep.setStatus(BatchStatus.FAILED);
+        firstRun.setStatus(BatchStatus.FAILED);
+        listener.rememberWatermark(firstRun);
+
+        JobExecution secondRun = MetaDataInstanceFactory.createJobExecution("documentExtractionJob", 2L, 2L);
+        listener.beforeJob(secondRun);
+        assertEquals("2022-06-01 00:00:00.0", secondRun.getExecutionContext().getString("lastSuccessfulCollection"));
+        secondRun.setStatus(BatchStatus.FAILED);
+        listener.rememberWatermark(secondRun);
+
+        JobExecution thirdRun = MetaDataInstanceFactory.createJobExecution("documentExtractionJob", 3L, 3L);
+        listener.beforeJob(thirdRun);
+        assertEquals("2022-06-01 00:00:00.0", thirdRun.getExecutionContext().getString("lastSuccessfulCollection"));
+        verify(s3Client, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void restartKeepsStartTimestampTest() {
+        /*
+        Test a restart after a step failed past a checkpoint reads from the timestamp the job
+        instance was first started from, not the checkpoint promoted from the failed step, so the
+        saved reader position (a row count) applies to the same rows.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        byte[] metadata = "{\"lastSuccessfulCollection\":\"2023-01-01 00:00:00\"}".getBytes(StandardCharsets.UTF_8);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+            GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(metadata))));
+        JobStartFinishListener listener = new JobStartFinishListener(s3Client, "bucket", "", false, "CS",
+            mock(SlackNotification.class));
+        ExecutionContextPromotionListener promotionListener = new ExecutionContextPromotionListener();
+        promotionListener.setKeys(new String[] {"lastSuccessfulCollection"});
+        promotionListener.setStatuses(new String[] {"*"});
+
+        // the first run fails after a checkpoint, which is promoted to the job
+        JobExecution firstRun = MetaDataInstanceFactory.createJobExecution("documentExtractionJob", 1L, 1L);
+        listener.beforeJob(firstRun);
+        StepExecution failedStep = firstRun.createStepExecution("mainStep");
+        failedStep.getExecutionContext().putString("lastSuccessfulCollection", "2023-02-01 00:00:00.0");
+        failedStep.setStatus(BatchStatus.FAILED);
+        promotionListener.afterStep(failedStep);
+        assertEquals("2023-02-01 00:00:00.0", firstRun.getExecutionContext().getString("lastSuccessfulCollection"));
+
+        // the restart carries the job ExecutionContext over
+        JobExecution restart = new JobExecution(firstRun.getJobInstance(), 2L, firstRun.getJobParameters());
+        restart.setExecutionContext(firstRun.getExecutionContext());
+        listener.beforeJob(restart);
+        PostgresItemReader reader = new PostgresItemReader(mock(DataSource.class), "metadata", "document_metadata",
+            10, false, "CS", Map.of("a1", List.of("ORIGINAL")));
+        reader.setSqlParams(restart.createStepExecution("mainStep"));
+
+        assertEquals("2023-01-01 00:00:00", reader.lastSuccessfulCollection);
+        verify(s3Client, times(1)).getObject(any(GetObjectRequest.class));
+    }
+}
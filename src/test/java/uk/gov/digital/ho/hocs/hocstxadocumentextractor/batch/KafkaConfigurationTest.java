@@ -0,0 +1,57 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class KafkaConfigurationTest {
+
+    private final KafkaConfiguration kafkaConfiguration = new KafkaConfiguration();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(kafkaConfiguration, "bootstrapServers", "localhost:9092");
+        for (String setting : new String[] {"compressionType", "lingerMs", "batchSize", "bufferMemory",
+            "maxInFlightRequests", "enableIdempotence", "acks"}) {
+            ReflectionTestUtils.setField(kafkaConfiguration, setting, "");
+        }
+    }
+
+    @Test
+    public void batchingSettingsReachProducerTest() {
+        /*
+        Test the configured linger.ms, batch.size and compression.type are passed to the producer.
+         */
+        ReflectionTestUtils.setField(kafkaConfiguration, "compressionType", "lz4");
+        ReflectionTestUtils.setField(kafkaConfiguration, "lingerMs", "20");
+        ReflectionTestUtils.setField(kafkaConfiguration, "batchSize", " 65536 ");
+
+        ProducerFactory<String, DocumentRow> producerFactory = kafkaConfiguration.producerFactory();
+        Map<String, Object> config = producerFactory.getConfigurationProperties();
+
+        assertEquals("lz4", config.get(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+        assertEquals("20", config.get(ProducerConfig.LINGER_MS_CONFIG));
+        assertEquals("65536", config.get(ProducerConfig.BATCH_SIZE_CONFIG));
+    }
+
+    @Test
+    public void unsetSettingsKeepClientDefaultsTest() {
+        /*
+        Test settings left empty are not passed to the producer, so the Kafka client's defaults apply.
+         */
+        Map<String, Object> config = kafkaConfiguration.producerFactory().getConfigurationProperties();
+
+        assertFalse(config.containsKey(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+        assertFalse(config.containsKey(ProducerConfig.LINGER_MS_CONFIG));
+        assertFalse(config.containsKey(ProducerConfig.BATCH_SIZE_CONFIG));
+        assertFalse(config.containsKey(ProducerConfig.ACKS_CONFIG));
+    }
+}
@@ -0,0 +1,82 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipelineMetricsListenerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(this.registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(this.registry);
+    }
+
+    @Test
+    public void chunkTimeAndCheckpointLagTest() {
+        /*
+        Test each chunk is timed and the checkpoint lag is the age of the acknowledged checkpoint.
+         */
+        PipelineMetricsListener listener = new PipelineMetricsListener("CS", false);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+        String checkpoint = Timestamp.valueOf(LocalDateTime.now().minusHours(1)).toString();
+        stepExecution.getExecutionContext().putString("lastSuccessfulCollection", checkpoint);
+
+        listener.beforeChunk(chunkContext);
+        listener.afterChunk(chunkContext);
+
+        assertEquals(1, this.registry.get("txa.chunk").tags("hocs_system", "CS", "delete", "false").timer().count());
+        double lag = this.registry.get("txa.checkpoint.lag.seconds").tags("hocs_system", "CS", "delete", "false").gauge().value();
+        assertTrue(lag >= 3600 && lag < 3660);
+    }
+
+    @Test
+    public void collectionsAreTaggedSeparatelyTest() {
+        /*
+        Test the chunks of each collection (e.g. the ingests and deletes of combined mode) are timed
+        under their own hocs_system and delete tags.
+         */
+        PipelineMetricsListener ingestListener = new PipelineMetricsListener("WCS", false);
+        PipelineMetricsListener deleteListener = new PipelineMetricsListener("WCS", true);
+        ChunkContext chunkContext = new ChunkContext(new StepContext(MetaDataInstanceFactory.createStepExecution()));
+
+        ingestListener.beforeChunk(chunkContext);
+        ingestListener.afterChunk(chunkContext);
+        ingestListener.beforeChunk(chunkContext);
+        ingestListener.afterChunk(chunkContext);
+        deleteListener.beforeChunk(chunkContext);
+        deleteListener.afterChunk(chunkContext);
+
+        assertEquals(2, this.registry.get("txa.chunk").tags("hocs_system", "WCS", "delete", "false").timer().count());
+        assertEquals(1, this.registry.get("txa.chunk").tags("hocs_system", "WCS", "delete", "true").timer().count());
+    }
+
+    @Test
+    public void metersAreCachedTest() {
+        /*
+        Test a meter is built once and returned again for the same tags.
+         */
+        assertSame(PipelineMetrics.chunk(PipelineMetrics.collectionTags("CS", true)),
+            PipelineMetrics.chunk(PipelineMetrics.collectionTags("CS", true)));
+    }
+}
@@ -0,0 +1,75 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class PostgresPagingItemReaderTest {
+
+    private static final Map<String, List<String>> DOCUMENT_TYPES = Map.of("a1", List.of("ORIGINAL", "CONTRIBUTION"));
+
+    @Test
+    public void setSqlParamsResolvesPlaceholdersTest() throws Exception {
+        /*
+        Test the paging queries are regenerated with the schema and table once the step starts,
+        and the timestamp and document types are bound as parameters.
+         */
+        boolean deletes = false;
+        PostgresPagingItemReader reader = new PostgresPagingItemReader(mock(DataSource.class),
+            "metadata",
+            "document_metadata",
+            10,
+            deletes,
+            "CS",
+            DOCUMENT_TYPES);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        stepExecution.getJobExecution().getExecutionContext().putString("lastSuccessfulCollection", "2023-03-22 12:00:00");
+
+        reader.setSqlParams(stepExecution);
+
+        String firstPage = reader.pagingQueryProvider.generateFirstPageQuery(10);
+        assertTrue(firstPage.contains("metadata.document_metadata"));
+        assertTrue(firstPage.contains("updated_on > CAST(? AS timestamp)"));
+        assertFalse(firstPage.contains("2023-03-22"));
+        assertEquals("2023-03-22 12:00:00", reader.queryParameters[0]);
+        assertArrayEquals(new String[] {"a1", "a1"}, (String[]) reader.queryParameters[2]);
+        assertArrayEquals(new String[] {"ORIGINAL", "CONTRIBUTION"}, (String[]) reader.queryParameters[3]);
+    }
+
+    @Test
+    public void remainingPagesUseKeysetTest() throws Exception {
+        /*
+        Test the remaining pages continue from the (updated_on, uuid) key of the last row
+        in the same order as the first page.
+         */
+        boolean deletes = true;
+        PostgresPagingItemReader reader = new PostgresPagingItemReader(mock(DataSource.class),
+            "metadata",
+            "document_metadata",
+            10,
+            deletes,
+            "CS",
+            DOCUMENT_TYPES);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        stepExecution.getJobExecution().getExecutionContext().putString("lastSuccessfulCollection", "2023-03-22 12:00:00");
+
+        reader.setSqlParams(stepExecution);
+
+        String remainingPages = reader.pagingQueryProvider.generateRemainingPagesQuery(10);
+        assertTrue(remainingPages.contains("deleted = True"));
+        assertTrue(remainingPages.contains("updated_on >"));
+        assertTrue(remainingPages.contains("uuid >"));
+        assertTrue(remainingPages.contains("ORDER BY updated_on ASC, uuid ASC"));
+        assertTrue(remainingPages.contains("LIMIT 10"));
+    }
+}
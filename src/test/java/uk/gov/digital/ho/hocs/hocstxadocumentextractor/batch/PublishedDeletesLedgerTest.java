@@ -0,0 +1,141 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PublishedDeletesLedgerTest {
+
+    private static DocumentRow deleteOf(String uuid, String deletedOn) {
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid(uuid);
+        doc.setDeletedOn(Timestamp.valueOf(deletedOn));
+        return doc;
+    }
+
+    @Test
+    public void publishedDeletesAreLoadedFromTheDayTest() {
+        /*
+        Test a delete is published when it is in the ledger of the day it was deleted on.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenReturn(
+            ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), "uuid-1\nuuid-2".getBytes(StandardCharsets.UTF_8)));
+        PublishedDeletesLedger ledger = new PublishedDeletesLedger(s3Client, "bucket", "CS");
+
+        assertTrue(ledger.isPublished(deleteOf("uuid-2", "2023-03-22 12:00:00")));
+        assertFalse(ledger.isPublished(deleteOf("uuid-3", "2023-03-22 13:00:00")));
+        // the day is only read once
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client, times(1)).getObjectAsBytes(request.capture());
+        assertEquals("decs/cs/deletes-ledger/2023-03-22.txt", request.getValue().key());
+    }
+
+    @Test
+    public void unreadableDayIsUnpublishedTest() {
+        /*
+        Test a day which does not exist, or cannot be read, has no published deletes.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+            .thenThrow(NoSuchKeyException.builder().build())
+            .thenThrow(S3Exception.builder().statusCode(403).build());
+        PublishedDeletesLedger ledger = new PublishedDeletesLedger(s3Client, "bucket", "CS");
+
+        assertFalse(ledger.isPublished(deleteOf("uuid-1", "2023-03-22 12:00:00")));
+        assertFalse(ledger.isPublished(deleteOf("uuid-1", "2023-03-23 12:00:00")));
+    }
+
+    @Test
+    public void commitWritesChangedDaysTest() throws IOException {
+        /*
+        Test commit writes the merged, sorted uuids of only the days with new deletes,
+        and nothing when there are none.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenReturn(
+            ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), "uuid-2".getBytes(StandardCharsets.UTF_8)));
+        PublishedDeletesLedger ledger = new PublishedDeletesLedger(s3Client, "bucket", "CS");
+        ledger.isPublished(deleteOf("uuid-9", "2023-03-21 12:00:00"));
+        ledger.recordPublished(List.of(
+            deleteOf("uuid-3", "2023-03-22 12:00:00"),
+            deleteOf("uuid-1", "2023-03-22 13:00:00")));
+
+        ledger.commit();
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client, times(1)).putObject(request.capture(), body.capture());
+        assertEquals("decs/cs/deletes-ledger/2023-03-22.txt", request.getValue().key());
+        assertEquals("uuid-1\nuuid-2\nuuid-3",
+            new String(body.getValue().contentStreamProvider().newStream().readAllBytes(), StandardCharsets.UTF_8));
+
+        ledger.commit();
+        verify(s3Client, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    public void failedCommitIsRetriedTest() {
+        /*
+        Test a day which fails to be written is written again by the next commit.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+            .thenThrow(S3Exception.builder().statusCode(500).build())
+            .thenReturn(null);
+        PublishedDeletesLedger ledger = new PublishedDeletesLedger(s3Client, "bucket", "CS");
+        ledger.recordPublished(List.of(deleteOf("uuid-1", "2023-03-22 12:00:00")));
+
+        ledger.commit();
+        ledger.commit();
+        ledger.commit();
+        verify(s3Client, times(2)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    public void unreadDayIsMergedBeforeCommitTest() throws IOException {
+        /*
+        Test a day which could not be read is not written until it can be read again,
+        and is then written with the uuids already on the bucket as well as the new ones.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+            .thenThrow(S3Exception.builder().statusCode(503).build())
+            .thenThrow(S3Exception.builder().statusCode(503).build())
+            .thenReturn(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), "uuid-2".getBytes(StandardCharsets.UTF_8)));
+        PublishedDeletesLedger ledger = new PublishedDeletesLedger(s3Client, "bucket", "CS");
+        ledger.recordPublished(List.of(deleteOf("uuid-1", "2023-03-22 12:00:00")));
+
+        ledger.commit();
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+
+        ledger.commit();
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client, times(1)).putObject(any(PutObjectRequest.class), body.capture());
+        assertEquals("uuid-1\nuuid-2",
+            new String(body.getValue().contentStreamProvider().newStream().readAllBytes(), StandardCharsets.UTF_8));
+    }
+}
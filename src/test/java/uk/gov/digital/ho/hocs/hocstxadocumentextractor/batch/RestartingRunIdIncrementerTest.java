@@ -0,0 +1,85 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RestartingRunIdIncrementerTest {
+
+    private final JobExplorer jobExplorer = mock(JobExplorer.class);
+    private final JobRepository jobRepository = mock(JobRepository.class);
+    private final JobInstance lastInstance = new JobInstance(1L, "documentExtractionJob");
+    private final JobParameters lastParameters = new JobParametersBuilder().addLong("run.id", 1L).toJobParameters();
+
+    private JobExecution lastExecution(BatchStatus status) {
+        JobExecution execution = new JobExecution(lastInstance, 1L, lastParameters);
+        execution.setStatus(status);
+        when(jobExplorer.getLastJobInstance("documentExtractionJob")).thenReturn(lastInstance);
+        when(jobExplorer.getLastJobExecution(lastInstance)).thenReturn(execution);
+        when(jobExplorer.getJobExecutions(lastInstance)).thenReturn(List.of(execution));
+        return execution;
+    }
+
+    @Test
+    public void completedJobIsIncrementedTest() {
+        /*
+        Test a new job instance is started after a completed one.
+         */
+        lastExecution(BatchStatus.COMPLETED);
+        RestartingRunIdIncrementer incrementer = new RestartingRunIdIncrementer(jobExplorer, jobRepository, "documentExtractionJob", 3);
+
+        assertEquals(2L, incrementer.getNext(lastParameters).getLong("run.id"));
+    }
+
+    @Test
+    public void failedJobIsRestartedTest() {
+        /*
+        Test a failed job instance is restarted with its parameters.
+         */
+        lastExecution(BatchStatus.FAILED);
+        RestartingRunIdIncrementer incrementer = new RestartingRunIdIncrementer(jobExplorer, jobRepository, "documentExtractionJob", 3);
+
+        assertEquals(lastParameters, incrementer.getNext(lastParameters));
+    }
+
+    @Test
+    public void killedJobIsFailedAndRestartedTest() {
+        /*
+        Test a job execution left running by a killed process is marked as failed and restarted.
+         */
+        JobExecution execution = lastExecution(BatchStatus.STARTED);
+        StepExecution stepExecution = execution.createStepExecution("mainStep");
+        stepExecution.setStatus(BatchStatus.STARTED);
+        RestartingRunIdIncrementer incrementer = new RestartingRunIdIncrementer(jobExplorer, jobRepository, "documentExtractionJob", 3);
+
+        assertEquals(lastParameters, incrementer.getNext(lastParameters));
+        assertEquals(BatchStatus.FAILED, execution.getStatus());
+        assertEquals(BatchStatus.FAILED, stepExecution.getStatus());
+        verify(jobRepository).update(execution);
+        verify(jobRepository).update(stepExecution);
+    }
+
+    @Test
+    public void startLimitStartsNewInstanceTest() {
+        /*
+        Test a failed job instance which has reached the start limit is not restarted again.
+         */
+        lastExecution(BatchStatus.FAILED);
+        RestartingRunIdIncrementer incrementer = new RestartingRunIdIncrementer(jobExplorer, jobRepository, "documentExtractionJob", 1);
+
+        assertEquals(2L, incrementer.getNext(lastParameters).getLong("run.id"));
+    }
+}
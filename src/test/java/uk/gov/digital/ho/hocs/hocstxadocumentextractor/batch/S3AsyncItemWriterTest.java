@@ -0,0 +1,85 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.Chunk;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class S3AsyncItemWriterTest {
+
+    private static class StubTransferWriter extends S3AsyncItemWriter {
+        /*
+        Replaces the S3 transfers with futures controlled by the test.
+         */
+        final List<CompletableFuture<PutObjectResponse>> transfers = new ArrayList<>();
+        final String failingUuid;
+
+        StubTransferWriter(String failingUuid) {
+            super(mock(S3AsyncClient.class), "source-bucket", "target-bucket", 2, true);
+            this.failingUuid = failingUuid;
+        }
+
+        @Override
+        protected CompletableFuture<PutObjectResponse> transferDocument(DocumentRow doc) {
+            CompletableFuture<PutObjectResponse> transfer;
+            if (doc.getUuid().equals(failingUuid)) {
+                transfer = CompletableFuture.failedFuture(S3Exception.builder()
+                    .awsErrorDetails(AwsErrorDetails.builder().errorMessage("Access Denied").build())
+                    .build());
+            } else {
+                transfer = CompletableFuture.supplyAsync(() -> PutObjectResponse.builder().build(),
+                    CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+            }
+            transfers.add(transfer);
+            return transfer;
+        }
+    }
+
+    private static Chunk<DocumentRow> chunkOf(String... uuids) {
+        Chunk<DocumentRow> chunk = new Chunk<>();
+        for (String uuid : uuids) {
+            DocumentRow doc = new DocumentRow();
+            doc.setUuid(uuid);
+            chunk.add(doc);
+        }
+        return chunk;
+    }
+
+    @Test
+    public void writeWaitsForEveryTransferTest() throws Exception {
+        /*
+        Test the write only returns once every transfer in the chunk has completed,
+        even when there are more documents than the in-flight limit.
+         */
+        StubTransferWriter writer = new StubTransferWriter(null);
+
+        writer.write(chunkOf("1", "2", "3", "4", "5"));
+
+        assertEquals(5, writer.transfers.size());
+        assertTrue(writer.transfers.stream().allMatch(f -> f.isDone() && !f.isCompletedExceptionally()));
+    }
+
+    @Test
+    public void singleFailureFailsChunkTest() throws Exception {
+        /*
+        Test one failed transfer fails the whole chunk with the S3Exception.
+         */
+        StubTransferWriter writer = new StubTransferWriter("1");
+
+        S3Exception e = assertThrows(S3Exception.class, () -> writer.write(chunkOf("1", "2")));
+        assertEquals("Access Denied", e.awsErrorDetails().errorMessage());
+    }
+}
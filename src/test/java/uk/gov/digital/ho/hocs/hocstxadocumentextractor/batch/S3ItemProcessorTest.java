@@ -0,0 +1,284 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CopyObjectResult;
+import software.amazon.awssdk.services.s3.model.CopyPartResult;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentJsonWriter;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3ItemProcessorTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final String SOURCE_ETAG = "\"9b2cf535f27731c974343645a3985328\"";
+
+    private static DocumentRow document() {
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid("3fa85f64-5717-4562-b3fc-2c963f66afa6");
+        doc.setExternalReferenceUuid("9b1deb4d-3b7d-4bad-9bdd-2b0d7b3dcb6d");
+        doc.setCaseType("COMP");
+        doc.setType("ORIGINAL");
+        doc.setPdfLink("doc.pdf");
+        doc.setStatus("UPLOADED");
+        doc.setUpdatedOn(Timestamp.valueOf("2023-07-28 12:34:56.789"));
+        doc.setDestinationKey("cs/doc.pdf");
+        doc.setSource("CS");
+        return doc;
+    }
+
+    private static String sidecarETag(DocumentRow doc) throws Exception {
+        return "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(DocumentJsonWriter.toJson(doc))) + "\"";
+    }
+
+    private static S3Client skipExistingClient(Map<String, HeadObjectResponse> objects) {
+        /*
+        A client whose HEAD requests find the given objects (by bucket/key) and no others.
+         */
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenAnswer(invocation -> {
+            HeadObjectRequest request = invocation.getArgument(0);
+            HeadObjectResponse object = objects.get(request.bucket() + "/" + request.key());
+            if (object == null) {
+                throw NoSuchKeyException.builder().build();
+            }
+            return object;
+        });
+        when(s3Client.copyObject(any(CopyObjectRequest.class)))
+            .thenReturn(CopyObjectResponse.builder().copyObjectResult(CopyObjectResult.builder().build()).build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+            .thenReturn(PutObjectResponse.builder().build());
+        return s3Client;
+    }
+
+    private static Map<String, HeadObjectResponse> copiedObjects(DocumentRow doc) throws Exception {
+        Map<String, HeadObjectResponse> objects = new HashMap<>();
+        objects.put("source-bucket/doc.pdf", HeadObjectResponse.builder().contentLength(1024L).eTag(SOURCE_ETAG).build());
+        objects.put("target-bucket/cs/doc.pdf", HeadObjectResponse.builder().contentLength(1024L).eTag(SOURCE_ETAG).build());
+        objects.put("target-bucket/cs/doc.pdf.json", HeadObjectResponse.builder().eTag(sidecarETag(doc)).build());
+        return objects;
+    }
+
+    private static StepExecution process(S3Client s3Client, DocumentRow doc) throws Exception {
+        /*
+        Processes the document in a step, as the skipped copies are counted in its ExecutionContext.
+         */
+        S3ItemProcessor processor = new S3ItemProcessor(s3Client, "source-bucket", "target-bucket", true, true, 0, 0, 1);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        StepSynchronizationManager.register(stepExecution);
+        try {
+            processor.process(doc);
+        } finally {
+            StepSynchronizationManager.close();
+        }
+        return stepExecution;
+    }
+
+    private static void verifyCopied(S3Client s3Client) {
+        ArgumentCaptor<CopyObjectRequest> copyCaptor = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client).copyObject(copyCaptor.capture());
+        assertEquals("cs/doc.pdf", copyCaptor.getValue().destinationKey());
+        ArgumentCaptor<PutObjectRequest> putCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(putCaptor.capture(), any(RequestBody.class));
+        assertEquals("cs/doc.pdf.json", putCaptor.getValue().key());
+    }
+
+    @Test
+    public void alreadyCopiedDocumentIsSkippedTest() throws Exception {
+        /*
+        Test a document whose copy and metadata json match is neither copied nor uploaded again, and is counted.
+         */
+        DocumentRow doc = document();
+        S3Client s3Client = skipExistingClient(copiedObjects(doc));
+
+        StepExecution stepExecution = process(s3Client, doc);
+
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals(1L, stepExecution.getExecutionContext().getLong("skippedCopyCount"));
+    }
+
+    @Test
+    public void mismatchedCopyIsCopiedAgainTest() throws Exception {
+        /*
+        Test a document whose copy has a different ETag (e.g. a changed source) is copied again.
+         */
+        DocumentRow doc = document();
+        Map<String, HeadObjectResponse> objects = copiedObjects(doc);
+        objects.put("target-bucket/cs/doc.pdf", HeadObjectResponse.builder().contentLength(1024L).eTag("\"stale\"").build());
+        S3Client s3Client = skipExistingClient(objects);
+
+        StepExecution stepExecution = process(s3Client, doc);
+
+        verifyCopied(s3Client);
+        assertFalse(stepExecution.getExecutionContext().containsKey("skippedCopyCount"));
+    }
+
+    @Test
+    public void missingCopyIsCopiedTest() throws Exception {
+        /*
+        Test a document not yet on the target bucket (HEAD throws NoSuchKey) is copied.
+         */
+        DocumentRow doc = document();
+        Map<String, HeadObjectResponse> objects = copiedObjects(doc);
+        objects.remove("target-bucket/cs/doc.pdf");
+        S3Client s3Client = skipExistingClient(objects);
+
+        StepExecution stepExecution = process(s3Client, doc);
+
+        verifyCopied(s3Client);
+        assertFalse(stepExecution.getExecutionContext().containsKey("skippedCopyCount"));
+    }
+
+    @Test
+    public void missingOrChangedSidecarIsRewrittenTest() throws Exception {
+        /*
+        Test the metadata json is uploaded again when it is missing or differs from the document's json now.
+         */
+        DocumentRow doc = document();
+        Map<String, HeadObjectResponse> objects = copiedObjects(doc);
+        objects.remove("target-bucket/cs/doc.pdf.json");
+        S3Client s3Client = skipExistingClient(objects);
+        process(s3Client, doc);
+        verifyCopied(s3Client);
+
+        objects.put("target-bucket/cs/doc.pdf.json", HeadObjectResponse.builder().eTag("\"stale\"").build());
+        s3Client = skipExistingClient(objects);
+        StepExecution stepExecution = process(s3Client, doc);
+        verifyCopied(s3Client);
+        assertFalse(stepExecution.getExecutionContext().containsKey("skippedCopyCount"));
+    }
+
+    private static S3Client multipartClient() {
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+            .thenReturn(CompleteMultipartUploadResponse.builder().build());
+        return s3Client;
+    }
+
+    private static HeadObjectResponse source(long size) {
+        return HeadObjectResponse.builder()
+            .contentLength(size)
+            .contentType("application/pdf")
+            .metadata(Map.of("case-type", "COMP"))
+            .build();
+    }
+
+    @Test
+    public void multipartCopyPartsTest() throws Exception {
+        /*
+        Test a 12MB document is copied as 5MB, 5MB and 2MB ranges and the parts are
+        completed in order.
+         */
+        S3Client s3Client = multipartClient();
+        when(s3Client.uploadPartCopy(any(UploadPartCopyRequest.class))).thenAnswer(invocation -> {
+            UploadPartCopyRequest request = invocation.getArgument(0);
+            return UploadPartCopyResponse.builder()
+                .copyPartResult(CopyPartResult.builder().eTag("etag-" + request.partNumber()).build())
+                .build();
+        });
+        ExecutorService partExecutor = Executors.newFixedThreadPool(2);
+
+        S3ItemProcessor.multipartCopyBucketObject(s3Client, partExecutor, "source-bucket", "doc.pdf",
+            "target-bucket", "cs/doc.pdf", source(12 * MB), 5 * MB);
+
+        ArgumentCaptor<UploadPartCopyRequest> partCaptor = ArgumentCaptor.forClass(UploadPartCopyRequest.class);
+        verify(s3Client, times(3)).uploadPartCopy(partCaptor.capture());
+        List<String> ranges = partCaptor.getAllValues().stream()
+            .sorted((a, b) -> a.partNumber() - b.partNumber())
+            .map(UploadPartCopyRequest::copySourceRange)
+            .toList();
+        assertEquals(List.of("bytes=0-5242879", "bytes=5242880-10485759", "bytes=10485760-12582911"), ranges);
+
+        ArgumentCaptor<CreateMultipartUploadRequest> createCaptor = ArgumentCaptor.forClass(CreateMultipartUploadRequest.class);
+        verify(s3Client).createMultipartUpload(createCaptor.capture());
+        assertEquals("application/pdf", createCaptor.getValue().contentType());
+        assertEquals(Map.of("case-type", "COMP"), createCaptor.getValue().metadata());
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(completeCaptor.capture());
+        assertEquals("etag-3", completeCaptor.getValue().multipartUpload().parts().get(2).eTag());
+        partExecutor.shutdown();
+    }
+
+    @Test
+    public void multipartCopyFailureAbortsTest() {
+        /*
+        Test a failed part aborts the upload and fails the copy with the S3Exception.
+         */
+        S3Client s3Client = multipartClient();
+        when(s3Client.uploadPartCopy(any(UploadPartCopyRequest.class))).thenThrow(S3Exception.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorMessage("Access Denied").build())
+            .build());
+        ExecutorService partExecutor = Executors.newFixedThreadPool(2);
+
+        assertThrows(S3Exception.class, () -> S3ItemProcessor.multipartCopyBucketObject(s3Client, partExecutor,
+            "source-bucket", "doc.pdf", "target-bucket", "cs/doc.pdf", source(12 * MB), 5 * MB));
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        partExecutor.shutdown();
+    }
+
+    @Test
+    public void multipartCopyClientFailureAbortsTest() {
+        /*
+        Test a client side failure (e.g. a timeout) completing the upload also aborts it.
+         */
+        S3Client s3Client = multipartClient();
+        when(s3Client.uploadPartCopy(any(UploadPartCopyRequest.class))).thenReturn(UploadPartCopyResponse.builder()
+            .copyPartResult(CopyPartResult.builder().eTag("etag").build())
+            .build());
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+            .thenThrow(SdkClientException.create("Read timed out"));
+        ExecutorService partExecutor = Executors.newFixedThreadPool(2);
+
+        assertThrows(SdkClientException.class, () -> S3ItemProcessor.multipartCopyBucketObject(s3Client, partExecutor,
+            "source-bucket", "doc.pdf", "target-bucket", "cs/doc.pdf", source(12 * MB), 5 * MB));
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        partExecutor.shutdown();
+    }
+}
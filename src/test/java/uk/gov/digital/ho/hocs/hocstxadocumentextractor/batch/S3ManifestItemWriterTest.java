@@ -0,0 +1,66 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.Chunk;
+import software.amazon.awssdk.services.s3.S3Client;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRowMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class S3ManifestItemWriterTest {
+
+    private static DocumentRow document(String uuid, String updatedOn) {
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid(uuid);
+        doc.setExternalReferenceUuid("ext-" + uuid);
+        doc.setUpdatedOn(Timestamp.valueOf(updatedOn));
+        doc.setDestinationKey(new DocumentRowMapper("CS").computeDestinationKey(uuid, doc.getExternalReferenceUuid(), doc.getUpdatedOn()));
+        doc.setSource("CS");
+        return doc;
+    }
+
+    @Test
+    public void groupByDayPartitionTest() {
+        /*
+        Test a chunk spanning two days is split into one manifest per day partition.
+         */
+        S3ManifestItemWriter writer = new S3ManifestItemWriter(mock(S3Client.class), "bucket", "CS", true, false);
+        Chunk<DocumentRow> chunk = new Chunk<>(
+            document("1", "2023-07-28 23:59:00"),
+            document("2", "2023-07-29 00:01:00"),
+            document("3", "2023-07-29 00:02:00"));
+
+        Map<String, List<DocumentRow>> manifests = writer.groupByManifestPrefix(chunk);
+
+        assertEquals(2, manifests.size());
+        assertEquals(1, manifests.get("decs/CS/year=2023/month=07/day=28/").size());
+        assertEquals(2, manifests.get("decs/CS/year=2023/month=07/day=29/").size());
+    }
+
+    @Test
+    public void encodeGzipNdjsonTest() throws IOException {
+        /*
+        Test the manifest holds one json document per line and can be gunzipped.
+         */
+        S3ManifestItemWriter writer = new S3ManifestItemWriter(mock(S3Client.class), "bucket", "CS", false, true);
+
+        byte[] manifest = writer.encode(List.of(document("1", "2023-07-28 12:00:00"), document("2", "2023-07-28 13:00:00")));
+
+        String ndjson = new String(new GZIPInputStream(new ByteArrayInputStream(manifest)).readAllBytes(), StandardCharsets.UTF_8);
+        String[] lines = ndjson.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("\"uuid\":\"1\""));
+        assertTrue(lines[1].contains("\"uuid\":\"2\""));
+    }
+}
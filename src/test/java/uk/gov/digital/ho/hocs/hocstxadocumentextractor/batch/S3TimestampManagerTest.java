@@ -6,7 +6,6 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,40 +31,24 @@ import static org.mockito.Mockito.when;
 public class S3TimestampManagerTest {
 
     @Test
-    public void constructorTest() throws URISyntaxException {
+    public void constructorTest() {
         /*
-        Test the class can instantiate with AWS credentials set as environment variables
-        and a valid S3 Endpoint URI.
+        Test the class can instantiate with the shared S3Client.
          */
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-04-03 10:10:10.0",
             deletes,
             "CS");
         assertNotNull(timestampManager.targetBucket);
-        assertNotNull(timestampManager.endpointURL);
         assertNotNull(timestampManager.lastCollection);
         assertEquals(timestampManager.metadataPath, "decs/cs/ingests.json");
         assertNotNull(timestampManager.s3Client);
     }
 
     @Test
-    public void constructorBadURITest() throws URISyntaxException {
-        /*
-        Test the class constructor throws an exception when provided an invalid URI
-         */
-        boolean deletes = false;
-        assertThrows(URISyntaxException.class, () -> new S3TimestampManager(
-            "bucket",
-            "some:bad && url",
-            "2023-04-03 10:10:10.0",
-            deletes,
-            "CS"));
-    }
-
-    @Test
-    public void getTimestampNoOverrideTest() throws URISyntaxException, IOException {
+    public void getTimestampNoOverrideTest() throws IOException {
         /*
         Test the getTimestamp method uses the timestamp from S3 when an empty lastCollection
         argument is given in the constructor.
@@ -73,8 +56,8 @@ public class S3TimestampManagerTest {
 
         // Mock the S3 response to a predictable timestamp value
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "",
             deletes,
             "CS");
@@ -95,15 +78,15 @@ public class S3TimestampManagerTest {
     }
 
     @Test
-    public void getTimestampWithOverrideTest() throws URISyntaxException, IOException {
+    public void getTimestampWithOverrideTest() throws IOException {
         /*
         Test the getTimestamp method overrides the timestamp from s3 when a timestamp is
         given in the lastCollection constructor argument.
          */
         // Mock the S3 response to a predictable timestamp value
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-01-01 00:00:00",
             deletes,
             "CS");
@@ -124,14 +107,14 @@ public class S3TimestampManagerTest {
     }
 
     @Test
-    public void putTimestampSuccessTest() throws URISyntaxException, IOException {
+    public void putTimestampSuccessTest() throws IOException {
         /*
         Test putTimestamp returns true when successful put request is made
          */
         // Mock the putObject response of the S3 Client
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-01-01 00:00:00",
             deletes,
             "CS");
@@ -154,14 +137,14 @@ public class S3TimestampManagerTest {
     }
 
     @Test
-    public void putTimestampFailTest() throws URISyntaxException, IOException {
+    public void putTimestampFailTest() throws IOException {
         /*
         Test putTimestamp returns false when put request fails
          */
         // Mock the putObject response of the S3 Client
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-01-01 00:00:00",
             deletes,
             "CS");
@@ -185,14 +168,93 @@ public class S3TimestampManagerTest {
     }
 
     @Test
-    public void readJsonBytesValidTest() throws URISyntaxException, IOException {
+    public void getPartitionTimestampsTest() throws IOException {
+        /*
+        Test only the per case type timestamps are returned as partition timestamps
+         */
+        boolean deletes = false;
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
+            "",
+            deletes,
+            "CS");
+        S3Client mockClient = mock(S3Client.class);
+        String mockJson = """
+            {"lastSuccessfulCollection": "2023-04-13 10:10:10.0", "lastSuccessfulCollection.a1": "2023-04-14 10:10:10.0"}""";
+        Response responseType = mock(Response.class);
+        InputStream mockResponse = new ByteArrayInputStream(mockJson.getBytes());
+        ResponseInputStream response = new ResponseInputStream(responseType, mockResponse);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenReturn(response);
+        timestampManager.s3Client = mockClient;
+        timestampManager.getTimestamp();
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("lastSuccessfulCollection.a1", "2023-04-14 10:10:10.0");
+        assertEquals(expected, timestampManager.getPartitionTimestamps());
+    }
+
+    @Test
+    public void getPartitionTimestampsWithOverrideTest() throws IOException {
+        /*
+        Test no partition timestamps are returned when the timestamp is overridden so every
+        partition starts from the override.
+         */
+        boolean deletes = false;
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
+            "2023-01-01 00:00:00",
+            deletes,
+            "CS");
+        Map<String, String> metadataJson = new HashMap<>();
+        metadataJson.put("lastSuccessfulCollection.a1", "2023-04-14 10:10:10.0");
+        timestampManager.metadataJson = metadataJson;
+
+        assertTrue(timestampManager.getPartitionTimestamps().isEmpty());
+    }
+
+    @Test
+    public void putTimestampsKeepsOtherKeysTest() throws IOException {
+        /*
+        Test putTimestamps updates the given keys and keeps the others in the record
+         */
+        boolean deletes = false;
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
+            "",
+            deletes,
+            "CS");
+        S3Client mockClient = mock(S3Client.class);
+        PutObjectResponse mockPutResponse = mock(PutObjectResponse.class);
+        SdkHttpResponse mockSdkResponse = mock(SdkHttpResponse.class);
+        when(mockSdkResponse.isSuccessful()).thenReturn(true);
+        when(mockPutResponse.sdkHttpResponse()).thenReturn(mockSdkResponse);
+        when(mockClient.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenReturn(mockPutResponse);
+        Map<String, String> metadataJson = new HashMap<>();
+        metadataJson.put("lastSuccessfulCollection", "2023-01-01 00:00:00.0");
+        metadataJson.put("lastSuccessfulCollection.a2", "2023-01-02 00:00:00.0");
+        timestampManager.s3Client = mockClient;
+        timestampManager.metadataJson = metadataJson;
+
+        Map<String, String> checkpoints = new HashMap<>();
+        checkpoints.put("lastSuccessfulCollection", "2023-02-01 00:00:00.0");
+        checkpoints.put("lastSuccessfulCollection.a1", "2023-02-02 00:00:00.0");
+        boolean result = timestampManager.putTimestamps(checkpoints);
+
+        assertTrue(result);
+        assertEquals("2023-02-01 00:00:00.0", timestampManager.metadataJson.get("lastSuccessfulCollection"));
+        assertEquals("2023-02-02 00:00:00.0", timestampManager.metadataJson.get("lastSuccessfulCollection.a1"));
+        assertEquals("2023-01-02 00:00:00.0", timestampManager.metadataJson.get("lastSuccessfulCollection.a2"));
+    }
+
+    @Test
+    public void readJsonBytesValidTest() throws IOException {
         /*
         Test readJsonBytes converts a valid InputStream to a valid HashMap
          */
         // Mock an acceptable input to the readJsonBytes method
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-01-01 00:00:00",
             deletes,
             "CS");
@@ -212,14 +274,14 @@ public class S3TimestampManagerTest {
     }
 
     @Test
-    public void readJsonBytesInvalidTest() throws URISyntaxException {
+    public void readJsonBytesInvalidTest() {
         /*
         Test readJsonBytes throws an exception when provided invalid json to parse
          */
         // Mock an malformed input to the readJsonBytes method
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-01-01 00:00:00",
             deletes,
             "CS");
@@ -237,14 +299,14 @@ public class S3TimestampManagerTest {
     }
 
     @Test
-    public void writeJsonBytesValidTest() throws JsonProcessingException, URISyntaxException {
+    public void writeJsonBytesValidTest() throws JsonProcessingException {
         /*
         Test writeJsonBytes converts a valid HashMap to byte array
          */
         // Mock an acceptable input to the writeJsonBytes method
         boolean deletes = false;
-        S3TimestampManager timestampManager = new S3TimestampManager("bucket",
-            "http://endpoint.url",
+        S3TimestampManager timestampManager = new S3TimestampManager(mock(S3Client.class),
+            "bucket",
             "2023-01-01 00:00:00",
             deletes,
             "CS");
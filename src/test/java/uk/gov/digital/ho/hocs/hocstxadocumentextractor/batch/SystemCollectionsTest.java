@@ -0,0 +1,41 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SystemCollectionsTest {
+
+    @Test
+    public void commitTimestampsOfEverySystemTest() {
+        /*
+        Test the timestamps of every system's writers are committed, even after one fails,
+        and the systems' connection pools are closed.
+         */
+        TxaKafkaItemWriter csIngestWriter = mock(TxaKafkaItemWriter.class);
+        TxaKafkaItemWriter csDeleteWriter = mock(TxaKafkaItemWriter.class);
+        TxaKafkaItemWriter wcsIngestWriter = mock(TxaKafkaItemWriter.class);
+        HikariDataSource csPool = mock(HikariDataSource.class);
+        HikariDataSource wcsPool = mock(HikariDataSource.class);
+        doThrow(new RuntimeException("S3 unavailable")).when(csIngestWriter).commitTimestamp();
+
+        SystemCollections collections = new SystemCollections();
+        collections.add(new SystemCollections.SystemCollection("CS", csPool, "metadata", "document_metadata",
+            csIngestWriter, csDeleteWriter));
+        collections.add(new SystemCollections.SystemCollection("WCS", wcsPool, "metadata", "document_metadata",
+            wcsIngestWriter, null));
+        assertEquals(List.of(csIngestWriter, csDeleteWriter, wcsIngestWriter), collections.getWriters());
+
+        collections.commitTimestamps();
+        verify(csDeleteWriter).commitTimestamp();
+        verify(wcsIngestWriter).commitTimestamp();
+        verify(csPool).close();
+        verify(wcsPool).close();
+    }
+}
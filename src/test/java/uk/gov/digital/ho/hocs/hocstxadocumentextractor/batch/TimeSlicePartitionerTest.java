@@ -0,0 +1,124 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TimeSlicePartitionerTest {
+
+    @Test
+    public void partitionPerSliceTest() {
+        /*
+        Test the range is cut into slices of the slice duration, the last one ending at the end of
+        the range, and a slice with a progress record starts from it.
+         */
+        TimeSlicePartitioner partitioner = new TimeSlicePartitioner("2023-01-01 00:00:00", "2023-01-03 12:00:00",
+            Duration.ofHours(24));
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        stepExecution.getJobExecution().getExecutionContext()
+            .putString("lastSuccessfulCollection.backfill.2023-01-02 00:00:00", "2023-01-02 06:00:00.0");
+        partitioner.saveJobContext(stepExecution);
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(2);
+
+        assertEquals(3, partitions.size());
+        ExecutionContext first = partitions.get("slice-2023-01-01 00:00:00");
+        assertEquals("2023-01-01 00:00:00", first.getString("partitionLastSuccessfulCollection"));
+        assertEquals("2023-01-02 00:00:00", first.getString("sliceEnd"));
+        assertEquals("2023-01-02 06:00:00.0",
+            partitions.get("slice-2023-01-02 00:00:00").getString("partitionLastSuccessfulCollection"));
+        assertEquals("2023-01-03 12:00:00", partitions.get("slice-2023-01-03 00:00:00").getString("sliceEnd"));
+    }
+
+    private StepExecution slice(JobExecution jobExecution, String start, String end, BatchStatus status, String progress) {
+        StepExecution execution = jobExecution.createStepExecution("workerStep:slice-" + start);
+        execution.setStatus(status);
+        execution.getExecutionContext().putString("sliceStart", start);
+        execution.getExecutionContext().putString("sliceEnd", end);
+        execution.getExecutionContext().putString("partitionLastSuccessfulCollection", start);
+        if (progress != null) {
+            execution.getExecutionContext().putString("lastSuccessfulCollection", progress);
+        }
+        return execution;
+    }
+
+    @Test
+    public void watermarkMovesToContiguousPrefixTest() {
+        /*
+        Test the job timestamp only moves to the end of the slices completed without a gap,
+        while every slice records its own progress.
+         */
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution();
+        List<StepExecution> slices = List.of(
+            slice(jobExecution, "2023-01-03 00:00:00", "2023-01-04 00:00:00", BatchStatus.COMPLETED, "2023-01-03 20:00:00.0"),
+            slice(jobExecution, "2023-01-01 00:00:00", "2023-01-02 00:00:00", BatchStatus.COMPLETED, "2023-01-01 23:00:00.0"),
+            slice(jobExecution, "2023-01-02 00:00:00", "2023-01-03 00:00:00", BatchStatus.STARTED, "2023-01-02 10:00:00.0"));
+
+        Map<String, String> checkpoints = TimeSlicePartitioner.collectCheckpoints(slices, "2023-01-01 00:00:00");
+
+        assertEquals("2023-01-02 00:00:00", checkpoints.get("lastSuccessfulCollection"));
+        assertEquals("2023-01-02 00:00:00", checkpoints.get("lastSuccessfulCollection.backfill.2023-01-01 00:00:00"));
+        assertEquals("2023-01-02 10:00:00.0", checkpoints.get("lastSuccessfulCollection.backfill.2023-01-02 00:00:00"));
+        assertEquals("2023-01-04 00:00:00", checkpoints.get("lastSuccessfulCollection.backfill.2023-01-03 00:00:00"));
+    }
+
+    @Test
+    public void watermarkNeverMovesBackTest() {
+        /*
+        Test a backfill of a range before the job timestamp leaves the job timestamp where it is.
+         */
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution();
+        List<StepExecution> slices = List.of(
+            slice(jobExecution, "2023-01-01 00:00:00", "2023-01-02 00:00:00", BatchStatus.COMPLETED, null));
+
+        Map<String, String> checkpoints = TimeSlicePartitioner.collectCheckpoints(slices, "2023-06-01 00:00:00.0");
+
+        assertEquals("2023-06-01 00:00:00.0", checkpoints.get("lastSuccessfulCollection"));
+    }
+
+    @Test
+    public void watermarkNotMovedOverAGapTest() {
+        /*
+        Test a completed backfill of a range starting after the job timestamp leaves the job
+        timestamp where it is, as the documents between the two have not been collected.
+         */
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution();
+        List<StepExecution> slices = List.of(
+            slice(jobExecution, "2023-03-01 00:00:00", "2023-03-02 00:00:00", BatchStatus.COMPLETED, null));
+
+        Map<String, String> checkpoints = TimeSlicePartitioner.collectCheckpoints(slices, "2023-01-01 00:00:00.0");
+
+        assertEquals("2023-01-01 00:00:00.0", checkpoints.get("lastSuccessfulCollection"));
+        assertEquals("2023-03-02 00:00:00", checkpoints.get("lastSuccessfulCollection.backfill.2023-03-01 00:00:00"));
+    }
+
+    @Test
+    public void passedSlicesRemovedTest() {
+        /*
+        Test the slice records the job timestamp has reached are removed from the record and
+        the slices after it, the case type partitions and the job timestamp are kept.
+         */
+        Map<String, String> record = new HashMap<>();
+        record.put("lastSuccessfulCollection", "2023-01-03 00:00:00.0");
+        record.put("lastSuccessfulCollection.backfill.2023-01-01 00:00:00", "2023-01-02 00:00:00");
+        record.put("lastSuccessfulCollection.backfill.2023-01-02 00:00:00", "2023-01-03 00:00:00");
+        record.put("lastSuccessfulCollection.backfill.2023-01-03 00:00:00", "2023-01-03 12:00:00.0");
+        record.put("lastSuccessfulCollection.a1", "2023-01-01 00:00:00.0");
+
+        TimeSlicePartitioner.removePassedSlices(record);
+
+        assertEquals(Map.of("lastSuccessfulCollection", "2023-01-03 00:00:00.0",
+            "lastSuccessfulCollection.backfill.2023-01-03 00:00:00", "2023-01-03 12:00:00.0",
+            "lastSuccessfulCollection.a1", "2023-01-01 00:00:00.0"), record);
+    }
+}
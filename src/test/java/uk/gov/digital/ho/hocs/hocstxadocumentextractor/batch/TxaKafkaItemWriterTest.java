@@ -0,0 +1,132 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import software.amazon.awssdk.services.s3.S3Client;
+import uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents.DocumentRow;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TxaKafkaItemWriterTest {
+
+    private static Chunk<DocumentRow> chunkOf(String externalReferenceUuid, String updatedOn) {
+        DocumentRow doc = new DocumentRow();
+        doc.setExternalReferenceUuid(externalReferenceUuid);
+        doc.setUpdatedOn(Timestamp.valueOf(updatedOn));
+        return new Chunk<>(doc);
+    }
+
+    private static TxaKafkaItemWriter pipelinedWriter(KafkaTemplate kafkaTemplate, int maxPendingChunks) throws Exception {
+        when(kafkaTemplate.getDefaultTopic()).thenReturn("txa-decs-ingests");
+        boolean deletes = false;
+        return new TxaKafkaItemWriter(mock(S3Client.class),
+            "bucket",
+            new HashMap<>(),
+            deletes,
+            "CS",
+            kafkaTemplate,
+            maxPendingChunks);
+    }
+
+    @Test
+    public void checkpointWaitsForEarlierChunksTest() throws Exception {
+        /*
+        Test the checkpoint does not advance past a chunk still in flight, even when
+        later chunks have already been acknowledged.
+         */
+        KafkaTemplate kafkaTemplate = mock(KafkaTemplate.class);
+        CompletableFuture firstSend = new CompletableFuture<>();
+        CompletableFuture secondSend = CompletableFuture.completedFuture(null);
+        when(kafkaTemplate.sendDefault(eq("doc-1"), any())).thenReturn(firstSend);
+        when(kafkaTemplate.sendDefault(eq("doc-2"), any())).thenReturn(secondSend);
+        TxaKafkaItemWriter writer = pipelinedWriter(kafkaTemplate, 2);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        writer.saveStepExecution(stepExecution);
+
+        writer.write(chunkOf("doc-1", "2023-03-22 12:00:00"));
+        writer.write(chunkOf("doc-2", "2023-03-22 13:00:00"));
+        assertFalse(stepExecution.getExecutionContext().containsKey("lastSuccessfulCollection"));
+
+        firstSend.complete(null);
+        writer.drainPendingChunks(stepExecution);
+        assertEquals("2023-03-22 13:00:00.0", stepExecution.getExecutionContext().getString("lastSuccessfulCollection"));
+    }
+
+    @Test
+    public void failedPendingChunkFailsStepTest() throws Exception {
+        /*
+        Test a failed send found when draining fails the step and leaves the checkpoint
+        at the last chunk acknowledged before it.
+         */
+        KafkaTemplate kafkaTemplate = mock(KafkaTemplate.class);
+        CompletableFuture secondSend = new CompletableFuture<>();
+        when(kafkaTemplate.sendDefault(eq("doc-1"), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaTemplate.sendDefault(eq("doc-2"), any())).thenReturn(secondSend);
+        TxaKafkaItemWriter writer = pipelinedWriter(kafkaTemplate, 1);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        writer.saveStepExecution(stepExecution);
+
+        writer.write(chunkOf("doc-1", "2023-03-22 12:00:00"));
+        writer.write(chunkOf("doc-2", "2023-03-22 13:00:00"));
+        assertEquals("2023-03-22 12:00:00.0", stepExecution.getExecutionContext().getString("lastSuccessfulCollection"));
+
+        secondSend.completeExceptionally(new RuntimeException("broker down"));
+        assertEquals(ExitStatus.FAILED, writer.drainPendingChunks(stepExecution));
+        assertEquals("2023-03-22 12:00:00.0", stepExecution.getExecutionContext().getString("lastSuccessfulCollection"));
+        assertNull(writer.drainPendingChunks(stepExecution));
+    }
+
+    @Test
+    public void publishedDeletesAreSkippedTest() throws Exception {
+        /*
+        Test a delete already in the ledger is not sent again, the checkpoint still moves past it,
+        and only the deletes sent are recorded in the ledger.
+         */
+        KafkaTemplate kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.getDefaultTopic()).thenReturn("txa-decs-deletes");
+        when(kafkaTemplate.sendDefault(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        boolean deletes = true;
+        TxaKafkaItemWriter writer = new TxaKafkaItemWriter(mock(S3Client.class),
+            "bucket",
+            new HashMap<>(),
+            deletes,
+            "CS",
+            kafkaTemplate,
+            0);
+        PublishedDeletesLedger ledger = mock(PublishedDeletesLedger.class);
+        writer.setLedger(ledger);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        writer.saveStepExecution(stepExecution);
+
+        DocumentRow unpublished = new DocumentRow();
+        unpublished.setExternalReferenceUuid("doc-1");
+        unpublished.setDeletedOn(Timestamp.valueOf("2023-03-22 12:00:00"));
+        DocumentRow published = new DocumentRow();
+        published.setExternalReferenceUuid("doc-2");
+        published.setDeletedOn(Timestamp.valueOf("2023-03-22 13:00:00"));
+        when(ledger.isPublished(published)).thenReturn(true);
+
+        writer.write(new Chunk<>(unpublished, published));
+        verify(kafkaTemplate).sendDefault("doc-1", unpublished);
+        verify(kafkaTemplate, never()).sendDefault("doc-2", published);
+        verify(ledger).recordPublished(List.of(unpublished));
+        assertEquals("2023-03-22 13:00:00.0", stepExecution.getExecutionContext().getString("lastSuccessfulCollection"));
+    }
+}
@@ -0,0 +1,66 @@
+package uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class DocumentJsonWriterTest {
+    /*
+    The json written must be byte for byte what an ObjectMapper writes,
+    as consumers of the events and sidecars may compare or hash them.
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static DocumentRow document(String pdfLink, Timestamp updatedOn, Timestamp deletedOn) {
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid("00000000-aaaa-bbbb-cccc-000000000000");
+        doc.setExternalReferenceUuid("00000000-aaaa-bbbb-cccc-0000000000a1");
+        doc.setCaseType("COMP");
+        doc.setType("ORIGINAL");
+        doc.setPdfLink(pdfLink);
+        doc.setStatus("UPLOADED");
+        doc.setUpdatedOn(updatedOn);
+        doc.setDeletedOn(deletedOn);
+        doc.setSource("CS");
+        return doc;
+    }
+
+    @Test
+    void sameAsObjectMapperTest() throws IOException {
+        DocumentRow[] documents = {
+            document("some-file.pdf", Timestamp.valueOf("2023-07-28 12:34:56.789123"), null),
+            document("some-file.pdf", Timestamp.valueOf("2023-07-28 12:34:56.0"), Timestamp.valueOf("2023-07-29 01:02:03.000999")),
+            document("1969-12-31.pdf", Timestamp.valueOf("1969-12-31 23:59:59.999999"), Timestamp.valueOf("1900-01-01 00:00:00.0")),
+            document("\"quoted\"\\back\\slash/and\b\t\n\f\r\u0000\u001f\u007f.pdf", Timestamp.valueOf("2023-07-28 12:00:00.0"), null),
+            document("café € ࠀ ￿ 📄 \ud800 lone.pdf", Timestamp.valueOf("2023-07-28 12:00:00.0"), null),
+            document(null, null, null),
+            new DocumentRow()
+        };
+        for (DocumentRow doc : documents) {
+            byte[] expected = this.objectMapper.writeValueAsBytes(doc);
+            assertArrayEquals(expected, DocumentJsonWriter.toJson(doc));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DocumentJsonWriter.writeJson(doc, out);
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    @Test
+    void bufferIsReusedTest() throws IOException {
+        /*
+        Test a document written after a much larger one is not left with the larger one's bytes.
+         */
+        DocumentRow large = document("x".repeat(100000) + ".pdf", Timestamp.valueOf("2023-07-28 12:00:00.0"), null);
+        DocumentRow small = document("small.pdf", Timestamp.valueOf("2023-07-28 12:00:00.0"), null);
+
+        assertArrayEquals(this.objectMapper.writeValueAsBytes(large), DocumentJsonWriter.toJson(large));
+        assertArrayEquals(this.objectMapper.writeValueAsBytes(small), DocumentJsonWriter.toJson(small));
+        assertArrayEquals(this.objectMapper.writeValueAsBytes(small), DocumentJsonWriter.toJson(small));
+    }
+}
@@ -2,6 +2,8 @@ package uk.gov.digital.ho.hocs.hocstxadocumentextractor.documents;
 
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.sql.Timestamp;
 
@@ -103,4 +105,74 @@ public class DocumentRowTest {
         assertEquals(actualDestinationKey, destinationKey);
         assertEquals(actualSource, source);
     }
+
+    @Test
+    void microsecondTimestampsTest() {
+        /*
+        Test timestamps keep the microseconds of Postgres timestamps, including before the epoch,
+        and null timestamps stay null.
+         */
+        DocumentRow doc = new DocumentRow();
+        Timestamp updatedOn = Timestamp.valueOf("2023-03-22 12:30:45.123456");
+        Timestamp deletedOn = Timestamp.valueOf("1969-12-31 23:59:59.999999");
+
+        doc.setUpdatedOn(updatedOn);
+        doc.setDeletedOn(deletedOn);
+        assertEquals(updatedOn, doc.getUpdatedOn());
+        assertEquals(deletedOn, doc.getDeletedOn());
+
+        doc.setDeletedOn(null);
+        assertNull(doc.getDeletedOn());
+        assertEquals(DocumentRow.NO_TIMESTAMP, doc.getDeletedOnMicros());
+    }
+
+    @Test
+    void codesAreSharedTest() {
+        /*
+        Test the low cardinality fields of different rows share one instance per value.
+         */
+        DocumentRow first = new DocumentRow();
+        DocumentRow second = new DocumentRow();
+        first.setStatus(new String("UPLOADED"));
+        second.setStatus(new String("UPLOADED"));
+        first.setSource(new String("CS"));
+        second.setSource(new String("CS"));
+
+        assertSame(first.getStatus(), second.getStatus());
+        assertSame(first.getSource(), second.getSource());
+    }
+
+    @Test
+    void destinationKeyIsComputedWhenUsedTest() {
+        /*
+        Test a row without a destinationKey computes it from its fields when it is first used.
+         */
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid("00000000-aaaa-bbbb-cccc-000000000000");
+        doc.setExternalReferenceUuid("00000000-aaaa-bbbb-cccc-0000000000a1");
+        doc.setSource("cs");
+        assertNull(doc.getDestinationKey());
+
+        doc.setUpdatedOn(Timestamp.valueOf("2007-09-23 10:10:10.0"));
+        assertEquals("decs/cs/year=2007/month=09/day=23/00000000-aaaa-bbbb-cccc-0000000000a1/00000000-aaaa-bbbb-cccc-000000000000.pdf",
+            doc.getDestinationKey());
+    }
+
+    @Test
+    void timestampsWithoutTimestampObjectsTest() {
+        /*
+        Test the strings and dates built from the micros are those the Timestamps give.
+         */
+        String[] timestamps = {"2023-07-28 12:34:56.789123", "2023-07-28 12:34:56.0", "2023-07-28 00:00:00.1",
+            "2023-03-26 01:30:00.000001", "2023-10-29 01:30:00.5", "1969-12-31 23:59:59.999999",
+            "1900-01-01 00:00:00.0"};
+        for (String value : timestamps) {
+            Timestamp timestamp = Timestamp.valueOf(value);
+            long micros = DocumentRow.toMicros(timestamp);
+            assertEquals(timestamp.toString(), DocumentRow.timestampString(micros));
+            assertEquals(timestamp.toLocalDateTime(), DocumentRow.toLocalDateTime(micros));
+        }
+        assertNull(DocumentRow.timestampString(DocumentRow.NO_TIMESTAMP));
+        assertNull(DocumentRow.toLocalDateTime(DocumentRow.NO_TIMESTAMP));
+    }
 }
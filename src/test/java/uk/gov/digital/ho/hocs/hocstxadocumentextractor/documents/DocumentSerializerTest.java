@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.Map;
@@ -71,4 +72,30 @@ public class DocumentSerializerTest {
         assertEquals(updatedOnEpoch, document.get("updatedOn"));
         assertEquals(deletedOnEpoch, document.get("deletedOn"));
     }
+
+    @Test
+    void serializedFieldOrderTest() {
+        /*
+        Test the json of a document has the fields, in the order, it has always had.
+         */
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT"));
+        DocumentRow doc = new DocumentRow();
+        doc.setUuid("00000000-aaaa-bbbb-cccc-000000000000");
+        doc.setExternalReferenceUuid("00000000-aaaa-bbbb-cccc-0000000000a1");
+        doc.setCaseType("a1");
+        doc.setType("ORIGINAL");
+        doc.setPdfLink("some-file.pdf");
+        doc.setStatus("UPLOADED");
+        doc.setUpdatedOn(Timestamp.valueOf("2007-09-23 10:10:10.0"));
+        doc.setSource("CS");
+
+        byte[] bytes = new DocumentSerializer().serialize("someTopic", doc);
+        String expected = "{\"uuid\":\"00000000-aaaa-bbbb-cccc-000000000000\","
+            + "\"externalReferenceUuid\":\"00000000-aaaa-bbbb-cccc-0000000000a1\","
+            + "\"caseType\":\"a1\",\"type\":\"ORIGINAL\",\"pdfLink\":\"some-file.pdf\","
+            + "\"status\":\"UPLOADED\",\"updatedOn\":1190542210000,\"deletedOn\":null,"
+            + "\"destinationKey\":\"decs/cs/year=2007/month=09/day=23/00000000-aaaa-bbbb-cccc-0000000000a1/00000000-aaaa-bbbb-cccc-000000000000.pdf\","
+            + "\"source\":\"CS\"}";
+        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+    }
 }